@@ -0,0 +1,498 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.ref.Reference;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static java.nio.file.Files.write;
+import static java.nio.file.StandardOpenOption.APPEND;
+
+public class Benchmark {
+
+    // Constants
+    public static final int[] DEFAULT_SIZES = {100, 1_000, 10_000, 100_000};
+    public static final int EPISODES_PER_SEASON = 24;
+    public static final int ROUNDS = 5;
+    public static final int EDL_LINES = 1_000_000;
+    public static final int STREAM_VIDEO_LENGTH = 1_440_000;
+    public static final long HEAP_SAMPLE_INTERVAL = 100;
+
+    // Task
+    @FunctionalInterface
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    // Attributes
+    private final Path directory;
+    private final Path output;
+    private final ArrayList<ArrayList<Converter.Chapter>> edls;
+    private final int[] videoLengths;
+    private final ArrayList<List<Converter.Chapter>> episodes;
+    private long checksum;
+
+    // Constructor
+    public Benchmark(int count) throws IOException {
+
+        // Initialize Attributes
+        directory = Files.createTempDirectory("intro-skip-burner-benchmark");
+        output = Files.createDirectory(directory.resolve(".output"));
+        edls = new ArrayList<>(count);
+        videoLengths = new int[count];
+        episodes = new ArrayList<>(count);
+
+        // Generate Episodes
+        Random random = new Random(42);
+        for (var i = 0; i < count; i++) {
+
+            // Intro and Outro
+            var length = 1_200_000 + random.nextInt(1_800_000);
+            var introBegin = random.nextInt(120_000);
+            var introEnd = introBegin + 60_000 + random.nextInt(30_000);
+            var outroBegin = length - 90_000 - random.nextInt(30_000);
+            var outroEnd = length - 30_000;
+            ArrayList<Converter.Chapter> edl = new ArrayList<>(List.of(new Converter.Chapter(introBegin, introEnd, true, false)));
+            if (i % 4 != 0) edl.add(new Converter.Chapter(outroBegin, outroEnd, false, true));
+
+            // Store Episode
+            videoLengths[i] = length;
+            edls.add(edl);
+            episodes.add(Converter.createChapters(edl, length));
+
+            // Write Library Files
+            var season = directory.resolve("Show " + i / (EPISODES_PER_SEASON * 10)).resolve("Season " + i / EPISODES_PER_SEASON % 10);
+            Files.createDirectories(season);
+            StringBuilder lines = new StringBuilder();
+            for (var chapter : edl) lines.append(chapter.begin() / 1000.0).append(' ').append(chapter.end() / 1000.0).append(" 3\n");
+            write(season.resolve(i + Converter.EDL), lines.toString().getBytes(StandardCharsets.US_ASCII));
+            write(season.resolve(i + Converter.VIDEO), new byte[0]);
+        }
+    }
+
+    // Run all Benchmarks
+    private void run() throws Exception {
+
+        // Debug
+        System.out.println("Episodes: " + episodes.size());
+        System.out.println("Directory: " + directory);
+
+        // Directory Discovery
+        measure("Discovery walkFileTree", () -> checksum += Library.discover(directory).size());
+        measure("Discovery index per directory", () -> {
+            for (var season : Library.discover(directory).keySet()) checksum += EpisodeIndex.discover(season, Converter.EDL, Converter.VIDEOS).size();
+        });
+        measure("Discovery index from walk", () -> {
+            for (var listing : Library.discover(directory).values()) checksum += EpisodeIndex.of(listing).size();
+        });
+
+        // Episode Sorting
+        ArrayList<String> names = new ArrayList<>();
+        for (var i = 0; i < episodes.size(); i++) names.add(i + Converter.EDL);
+        Collections.shuffle(names, new Random(42));
+        measure("Sort parseInt comparator", () -> {
+            ArrayList<String> sorted = new ArrayList<>(names);
+            sorted.sort((a, b) -> Integer.compare(Integer.parseInt(a.replace(Converter.EDL, "")), Integer.parseInt(b.replace(Converter.EDL, ""))));
+            checksum += sorted.getFirst().length();
+        });
+        measure("Sort precomputed natural keys", () -> {
+            ArrayList<EpisodeIndex.Key> sorted = new ArrayList<>(names.size());
+            for (var name : names) sorted.add(EpisodeIndex.Key.of(name.substring(0, name.length() - Converter.EDL.length())));
+            sorted.sort(null);
+            checksum += sorted.getFirst().name().length();
+        });
+
+        // Chapter Construction
+        measure("Chapter construction", () -> {
+            for (var i = 0; i < edls.size(); i++) checksum += Converter.createChapters(edls.get(i), videoLengths[i]).size();
+        });
+
+        // FFMeta Rendering
+        measure("FFMeta String.format rendering", () -> {
+            for (var chapters : episodes) checksum += renderLegacy(chapters).length;
+        });
+        measure("FFMeta writer rendering", () -> {
+            FFMetaWriter writer = new FFMetaWriter();
+            for (var chapters : episodes) checksum += writer.render(chapters).remaining();
+        });
+
+        // FFMeta Writing
+        measure("FFMeta per-chapter Files.write", this::writeLegacy);
+        measure("FFMeta single buffered write", this::writeBuffered);
+
+        // Console Output, into a file like a redirected System.out
+        measure("Logging synchronous System.out", () -> {
+            try (PrintStream out = logStream()) {
+                for (var i = 0; i < edls.size(); i++) {
+                    out.println("Processing File: " + i);
+                    out.println("\tDuration: " + videoLengths[i] + "ms");
+                    out.println("\tChapters:");
+                    for (var chapter : edls.get(i)) out.println("\t\t" + chapter.begin() + "ms - " + chapter.end() + "ms" + chapter.title());
+                    out.println("Successfully converted: " + i + Converter.VIDEO);
+                }
+            }
+        });
+        for (var level : List.of(Log.Level.VERBOSE, Log.Level.NORMAL)) {
+            var name = "Logging async " + level.name().toLowerCase();
+            measure(name, () -> {
+                try (PrintStream out = logStream()) {
+                    Log.setOutput(out);
+                    Log.setLevel(level);
+                    for (var i = 0; i < edls.size(); i++) {
+                        if (Log.isVerbose()) Log.debug("Processing File: " + i + "\n\tDuration: " + videoLengths[i] + "ms\n\tChapters:");
+                        for (var chapter : edls.get(i)) if (Log.isVerbose()) Log.debug("\t\t" + chapter.begin() + "ms - " + chapter.end() + "ms" + chapter.title());
+                        Log.info("Successfully converted: " + i + Converter.VIDEO);
+                    }
+                    Log.flush();
+                } finally {
+                    Log.setOutput(System.out);
+                    Log.setLevel(Log.Level.NORMAL);
+                }
+            });
+
+            // Every line must reach the file, a dropped line would make the writer look faster
+            long expected = edls.size();
+            if (level == Log.Level.VERBOSE) for (var chapters : edls) expected += 3 + chapters.size();
+            long lines;
+            try (Stream<String> log = Files.lines(output.resolve("log.txt"))) {
+                lines = log.count();
+            }
+            System.out.println(name + " dropped: " + (expected - lines) + " of " + expected + " lines");
+            if (lines != expected) throw new IllegalStateException(name + " dropped " + (expected - lines) + " lines");
+        }
+
+        // Episode Store Footprint
+        System.out.println("HashMap episode heap: " + measureHeap(() -> {
+            HashMap<Integer, ArrayList<Converter.Chapter>> edlData = new HashMap<>();
+            HashMap<Integer, Integer> lengths = new HashMap<>();
+            for (var i = 0; i < edls.size(); i++) {
+                ArrayList<Converter.Chapter> copy = new ArrayList<>();
+                for (var chapter : edls.get(i)) copy.add(new Converter.Chapter(chapter.begin(), chapter.end(), chapter.isIntro(), chapter.isOutro()));
+                edlData.put(i, copy);
+                lengths.put(i, videoLengths[i]);
+            }
+            return List.of(edlData, lengths);
+        }) / 1024 + "KiB");
+        System.out.println("EpisodeStore heap: " + measureHeap(() -> {
+            EpisodeStore store = new EpisodeStore();
+            for (var i = 0; i < edls.size(); i++) store.put(i, videoLengths[i], edls.get(i));
+            return store;
+        }) / 1024 + "KiB");
+    }
+
+    // Measure the heap retained by the result of a supplier
+    private static long measureHeap(Supplier<Object> supplier) {
+        var runtime = Runtime.getRuntime();
+        System.gc();
+        var before = runtime.totalMemory() - runtime.freeMemory();
+        Object result = supplier.get();
+        System.gc();
+        var after = runtime.totalMemory() - runtime.freeMemory();
+        Reference.reachabilityFence(result);
+        return Math.max(0, after - before);
+    }
+
+    // Render a document with String.format like the original code
+    private static byte[] renderLegacy(List<Converter.Chapter> chapters) {
+        StringBuilder text = new StringBuilder(Converter.HEADER);
+        for (var chapter : chapters) text.append(String.format(Converter.CHAPTER, chapter.begin(), chapter.end(), chapter.title()));
+        return text.toString().getBytes();
+    }
+
+    // Write every chapter with its own Files.write like the original code
+    private void writeLegacy() throws IOException {
+        for (var i = 0; i < episodes.size(); i++) {
+            var file = output.resolve(i + Converter.FFMETA);
+            write(file, Converter.HEADER.getBytes());
+            for (var chapter : episodes.get(i)) write(file, String.format(Converter.CHAPTER, chapter.begin(), chapter.end(), chapter.title()).getBytes(), APPEND);
+        }
+    }
+
+    // Write every document with a single channel write
+    private void writeBuffered() throws IOException {
+        FFMetaWriter writer = new FFMetaWriter();
+        for (var i = 0; i < episodes.size(); i++) writer.write(output.resolve(i + Converter.FFMETA), episodes.get(i));
+    }
+
+    // Open a log file flushed on every line like System.out
+    private PrintStream logStream() throws IOException {
+        return new PrintStream(new BufferedOutputStream(new FileOutputStream(output.resolve("log.txt").toFile()), 128), true);
+    }
+
+    // Delete the generated files
+    private void cleanUp() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    // Measure the best of several rounds after a warm-up round
+    private static void measure(String name, Task task) throws Exception {
+
+        // Warm Up
+        task.run();
+
+        // Measure
+        var best = Long.MAX_VALUE;
+        for (var round = 0; round < ROUNDS; round++) {
+            var start = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        // Debug
+        System.out.println(name + ": " + best / 1_000 / 1_000.0 + "ms");
+    }
+
+    // Generate an EDL corpus with tabs, action columns and CRLF
+    private static byte[] generateCorpus(int lines) {
+        Random random = new Random(42);
+        StringBuilder corpus = new StringBuilder(lines * 24);
+        for (var i = 0; i < lines; i++) {
+            var begin = random.nextInt(3_000_000);
+            var separator = i % 3 == 0 ? "\t" : " ";
+            corpus.append(begin / 1000).append('.').append(String.format("%06d", random.nextInt(1_000_000)))
+                    .append(separator).append((begin + 60_000) / 1000).append('.').append(begin % 1000)
+                    .append(separator).append(3)
+                    .append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+        return corpus.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Benchmark EDL parsing over a corpus
+    private static void runParsing(byte[] corpus) throws Exception {
+
+        // Debug
+        System.out.println("EDL Lines: " + EDL_LINES);
+        long[] sink = new long[1];
+
+        // Parse like the original code
+        measure("EDL split and BigDecimal", () -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(corpus), StandardCharsets.US_ASCII))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] split = line.split(" ");
+                    if (split.length < 2) split = line.split("\t");
+                    sink[0] += new BigDecimal(split[0]).movePointRight(3).intValue();
+                    sink[0] += new BigDecimal(split[1]).movePointRight(3).intValue();
+                }
+            }
+        });
+
+        // Parse with the byte level parser
+        measure("EDL byte parser", () -> {
+            EdlParser parser = new EdlParser();
+            var entries = parser.parse(corpus, corpus.length);
+            for (var i = 0; i < entries; i++) sink[0] += parser.begin(i) + parser.end(i);
+        });
+
+        // Keep results alive
+        System.out.println("Checksum: " + sink[0]);
+
+        // Both parsers must agree, BigDecimal rounded like the byte parser
+        EdlParser parser = new EdlParser();
+        var entries = parser.parse(corpus, corpus.length);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(corpus), StandardCharsets.US_ASCII))) {
+            String line;
+            var i = 0;
+            for (; (line = reader.readLine()) != null; i++) {
+                String[] split = line.split("[ \t]");
+                var begin = new BigDecimal(split[0]).movePointRight(3).setScale(0, RoundingMode.HALF_UP).intValueExact();
+                var end = new BigDecimal(split[1]).movePointRight(3).setScale(0, RoundingMode.HALF_UP).intValueExact();
+                if (i >= entries || parser.begin(i) != begin || parser.end(i) != end) throw new IllegalStateException("EDL parsers differ in line " + (i + 1) + ": " + line);
+            }
+            if (i != entries) throw new IllegalStateException("EDL parsers differ in line count: " + i + " and " + entries);
+        }
+        System.out.println("EDL parsers agree on " + entries + " lines");
+    }
+
+    // Benchmark every backend which can handle a sample video on a copy of it
+    private static void runBackends(Path sample) throws Exception {
+
+        // Debug
+        System.out.println();
+        System.out.println("Sample: " + sample);
+        List<Converter.Chapter> chapters = Converter.createChapters(new ArrayList<>(List.of(new Converter.Chapter(30_000, 90_000, true, false))), 1_200_000);
+
+        // Backends
+        for (var backend : ContainerBackend.BACKENDS) {
+            if (backend != ContainerBackend.FFMPEG && !backend.matches(magic(sample))) continue;
+            Path copy = Files.createTempFile("intro-skip-burner-benchmark", sample.getFileName().toString());
+            try {
+                Files.copy(sample, copy, StandardCopyOption.REPLACE_EXISTING);
+                measure(backend.getName() + " duration", () -> backend.getDuration(copy));
+                measure(backend.getName() + " read chapters", () -> backend.readChapters(copy));
+                measure(backend.getName() + " write chapters", () -> backend.writeChapters(copy, chapters));
+            } catch (IOException e) {
+                System.out.println(backend.getName() + ": unavailable (" + e.getMessage() + ")");
+            } finally {
+                Files.deleteIfExists(copy);
+            }
+        }
+    }
+
+    // Convert a flat directory in stream mode and print the peak live heap, run with a small -Xmx to check it stays bounded
+    private static void runStreaming(int count) throws Exception {
+
+        // Debug
+        System.out.println("Stream Episodes: " + count);
+        Path directory = Files.createTempDirectory("intro-skip-burner-stream");
+
+        try {
+
+            // Already chaptered Videos, so only the MP4 reader and the journal do work per episode
+            List<Converter.Chapter> chapters = Converter.createChapters(new ArrayList<>(List.of(new Converter.Chapter(30_000, 90_000, true, false))), STREAM_VIDEO_LENGTH);
+            Path template = directory.resolve(".template" + Converter.VIDEO);
+            write(template, minimalMp4(STREAM_VIDEO_LENGTH));
+            Mp4ChapterWriter.write(template, chapters);
+            byte[] video = Files.readAllBytes(template);
+            Files.delete(template);
+
+            // Generate Episodes
+            byte[] edl = "30.0 90.0 3\n".getBytes(StandardCharsets.US_ASCII);
+            for (var i = 0; i < count; i++) {
+                write(directory.resolve(i + Converter.EDL), edl);
+                write(directory.resolve(i + Converter.VIDEO), video);
+            }
+
+            // Sample the Heap after Garbage Collections
+            AtomicLong peak = new AtomicLong();
+            Thread sampler = Thread.ofPlatform().daemon().start(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    peak.accumulateAndGet(liveHeap(), Math::max);
+                    try {
+                        Thread.sleep(HEAP_SAMPLE_INTERVAL);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+
+            // Convert one Job at a time without writing FFMeta Files
+            var start = System.nanoTime();
+            Log.setLevel(Log.Level.QUIET);
+            try {
+                new Converter(new Options(directory + File.separator, 1, Options.AUTO, Options.AUTO, false, true, false, false, false, true, Log.Level.QUIET, -1, null));
+            } finally {
+                Log.setLevel(Log.Level.NORMAL);
+                sampler.interrupt();
+                sampler.join();
+            }
+
+            // Debug
+            System.out.println("Stream conversion: " + (System.nanoTime() - start) / 1_000_000 + "ms");
+            System.out.println("Peak live heap: " + peak.get() / 1024 + "KiB of " + Runtime.getRuntime().maxMemory() / 1024 / 1024 + "MiB");
+
+        } finally {
+
+            // Delete the flat Directory without collecting its Files
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    // Get the heap in use after the latest garbage collection of each pool
+    private static long liveHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) continue;
+            var usage = pool.getCollectionUsage();
+            used += usage != null ? usage.getUsed() : pool.getUsage().getUsed();
+        }
+        return used;
+    }
+
+    // Create an MP4 file without samples whose movie header has the given length in milliseconds
+    private static byte[] minimalMp4(int length) {
+        byte[] mvhd = ByteBuffer.allocate(100).putInt(12, 1000).putInt(16, length).array();
+        byte[] ftyp = box("ftyp", "isom\0\0\2\0isommp41".getBytes(StandardCharsets.ISO_8859_1));
+        byte[] mdat = box("mdat", new byte[0]);
+        byte[] moov = box("moov", box("mvhd", mvhd));
+        return ByteBuffer.allocate(ftyp.length + mdat.length + moov.length).put(ftyp).put(mdat).put(moov).array();
+    }
+
+    // Wrap a payload into an MP4 box
+    private static byte[] box(String type, byte[] payload) {
+        return ByteBuffer.allocate(8 + payload.length)
+                .putInt(8 + payload.length)
+                .put(type.getBytes(StandardCharsets.ISO_8859_1))
+                .put(payload)
+                .array();
+    }
+
+    // Read the first bytes of a file
+    private static ByteBuffer magic(Path file) throws IOException {
+        try (var channel = FileChannel.open(file)) {
+            ByteBuffer magic = ByteBuffer.allocate(ContainerBackend.MAGIC_SIZE);
+            while (magic.hasRemaining()) if (channel.read(magic) < 0) break;
+            return magic.flip();
+        }
+    }
+
+    // Main
+    public static void main(String[] args) throws Exception {
+
+        // Stream Mode Heap
+        if (args.length >= 2 && args[0].equals("--stream")) {
+            runStreaming(Integer.parseInt(args[1]));
+            return;
+        }
+
+        // Container Backends
+        if (args.length >= 2 && args[0].equals("--sample")) {
+            runBackends(Path.of(args[1]));
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+
+        // EDL Parsing
+        runParsing(generateCorpus(EDL_LINES));
+
+        // Synthetic Libraries
+        int[] sizes = args.length == 0 ? DEFAULT_SIZES : Stream.of(args).mapToInt(Integer::parseInt).toArray();
+        for (var size : sizes) {
+
+            // Create Benchmark
+            System.out.println();
+            Benchmark benchmark = new Benchmark(size);
+
+            // Run Benchmark
+            try {
+                benchmark.run();
+                System.out.println("Checksum: " + benchmark.checksum);
+            } finally {
+                benchmark.cleanUp();
+            }
+        }
+    }
+}
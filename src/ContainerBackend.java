@@ -0,0 +1,81 @@
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+public interface ContainerBackend {
+
+    // Records
+    record Mark(int begin, String title) {}
+
+    // Region: free space of a file chapters are written into, consecutive free boxes or Void elements
+    record Region(long offset, long size) {
+
+        // Offset of the first byte after the region
+        public long end() {
+            return offset + size;
+        }
+    }
+
+    // Thrown when writing chapters failed after the file was modified, it mustn't be remuxed then
+    final class PartialWriteException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public PartialWriteException(Path file, IOException cause) {
+            super("Failed after modifying " + file.getFileName() + ": " + cause.getMessage(), cause);
+        }
+    }
+
+    // Constants
+    int MAGIC_SIZE = 12;
+    ContainerBackend FFMPEG = new FFmpegBackend();
+    List<ContainerBackend> BACKENDS = List.of(new Mp4Backend(), new MkvBackend(), FFMPEG);
+
+    // Get the name of the backend
+    String getName();
+
+    // Get the file extensions the backend handles
+    List<String> getExtensions();
+
+    // Check if the first bytes of a file identify a container the backend handles
+    boolean matches(ByteBuffer magic);
+
+    // Get the duration of a video in milliseconds, -1 if it is unknown
+    int getDuration(Path file) throws IOException;
+
+    // Read the chapters of a video, empty if there are none
+    List<Mark> readChapters(Path file) throws IOException;
+
+    // Replace the chapters of a video and return the number of bytes written
+    long writeChapters(Path file, List<Converter.Chapter> chapters) throws IOException;
+
+    // Check if chapters are written without rewriting the media data
+    boolean supportsInPlace();
+
+    // Check if chapters are written in place even without --in-place, because the file keeps every stream as it is
+    boolean prefersInPlace();
+
+    // Select a backend by the content of a file, then by its extension, ffmpeg handles everything else
+    static ContainerBackend select(Path file) {
+
+        // Magic Bytes
+        ByteBuffer magic = ByteBuffer.allocate(MAGIC_SIZE);
+        try (var channel = FileChannel.open(file, READ)) {
+            while (magic.hasRemaining()) if (channel.read(magic) < 0) break;
+        } catch (IOException ignored) {
+            // Select by extension only
+        }
+        magic.flip();
+        for (var backend : BACKENDS) if (backend.matches(magic)) return backend;
+
+        // Extension
+        var name = file.getFileName().toString();
+        for (var backend : BACKENDS) for (var extension : backend.getExtensions()) if (name.endsWith(extension)) return backend;
+        return FFMPEG;
+    }
+}
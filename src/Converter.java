@@ -1,28 +1,49 @@
 import java.io.File;
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 
-import java.math.BigDecimal;
 import java.net.URISyntaxException;
 
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
-
-import static java.nio.file.Files.write;
-import static java.nio.file.StandardOpenOption.APPEND;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
 
 public class Converter {
 
     // Record
-    public record Chapter(int begin, int end, boolean isIntro, boolean isOutro) {}
+    public record Chapter(int begin, int end, boolean isIntro, boolean isOutro) {
+
+        // Get the chapter title
+        public String title() {
+            return isIntro ? INTRO : isOutro ? OUTRO : CONTENT;
+        }
+    }
 
     // Extensions
     public static final String EDL = ".edl";
     public static final String VIDEO = ".mp4";
+    public static final String MKV = ".mkv";
+    public static final List<String> VIDEOS = List.of(VIDEO, MKV);
     public static final String FFMETA = ".ffmeta";
 
     // Constants
@@ -40,275 +61,799 @@ public class Converter {
             title=%s
             """;
 
+    // Concurrency
+    public static final int PIPELINE_CAPACITY = 16;
+    public static final int PROBE_BATCH = 32;
+    private static final int END = -1;
+
     // Attributes
-    private final HashMap<Integer, ArrayList<Chapter>> edlData;
-    private final HashMap<Integer, Integer> videoLengths;
+    private final EpisodeStore episodes;
+    private EpisodeIndex index; // Replaced by the discovery before scanning
+    private final Options options;
+    private final int jobs;
+    private final DurationCache cache;
+    private final Journal journal;
+    private final Set<Integer> completed;
+    private final EdlParser parser; // Only used by the scanning thread
+    private final Progress progress;
+    private final DiskScheduler.Limits limits;
 
     // Constructor
     public Converter(String directory) throws IOException, InterruptedException {
+        this(Options.of(directory));
+    }
 
-        // Initialize Attributes
-        edlData = new HashMap<>();
-        videoLengths = new HashMap<>();
+    // Constructor
+    public Converter(Options options) throws IOException, InterruptedException {
+        this(options, null, null, true);
+    }
 
-        // Scan EDL Files
+    // Constructor for a directory whose episodes a library walk already listed, remuxing within limits shared with the other directories
+    public Converter(Options options, EpisodeIndex index, DiskScheduler.Limits limits) throws IOException, InterruptedException {
+        this(options, index, limits, true);
+    }
+
+    // Constructor
+    private Converter(Options options, EpisodeIndex discovered, DiskScheduler.Limits shared, boolean run) throws IOException, InterruptedException {
+
+        // Variables
+        var directory = options.directory();
+
+        // Initialize Attributes
+        episodes = new EpisodeStore();
+        index = discovered != null ? discovered : new EpisodeIndex();
+        this.options = options;
+        jobs = options.jobs() == Options.AUTO ? defaultJobs(directory, options.jobsPerDisk()) : Math.max(1, options.jobs());
+        cache = options.stream() ? DurationCache.disabled() : new DurationCache(Path.of(directory));
+        journal = options.stream() ? Journal.streaming(Path.of(directory)) : new Journal(Path.of(directory));
+        completed = ConcurrentHashMap.newKeySet();
+        parser = new EdlParser();
+        progress = new Progress();
+        limits = shared != null ? shared : new DiskScheduler.Limits(jobs, options.jobsPerDisk());
+        if (!run) return;
+
+        // Recover interrupted Conversions
+        recover();
+
+        // Run as Stream
         var start = System.nanoTime();
-        scanEdlFiles(directory);
-        var scanTime = System.nanoTime() - start;
+        if (options.stream()) {
+            int count;
+            try (cache; journal) {
+                count = runStream(directory);
+                journal.truncateRun();
+            }
 
-        // Write FFMeta Files
-        writeFFMetaFile(directory);
-        var writeTime = System.nanoTime() - start - scanTime;
+            // Debug
+            Log.info("\n\n\n");
+            Log.info("Episodes: " + count);
+            Log.info("Total Time: " + (System.nanoTime() - start) / 1_000_000 + "ms");
+            return;
+        }
 
-        // Append to FFMeta File
-        appendFFMetaFile(directory);
-        var appendTime = System.nanoTime() - start - scanTime - writeTime;
+        // Run as Pipeline
+        if (options.pipeline()) {
+            try (cache; journal) {
+                if (discovered == null) index = EpisodeIndex.discover(Path.of(directory), EDL, VIDEOS);
+                runPipeline(directory);
+            }
+
+            // Debug
+            Log.info("\n\n\n");
+            Log.info("Total Time: " + (System.nanoTime() - start) / 1_000_000 + "ms");
+            Log.info("Episode Store: " + episodes.size() + " episodes, " + episodes.getFootprint() / 1024 + "KiB");
+            return;
+        }
+
+        // Scan EDL Files
+        long scanTime, writeTime, appendTime;
+        try (cache; journal) {
+            if (discovered == null) index = EpisodeIndex.discover(Path.of(directory), EDL, VIDEOS);
+            scanEdlFiles(directory);
+            scanTime = System.nanoTime() - start;
+
+            // Write FFMeta Files
+            if (!options.pipe()) writeFFMetaFile(directory);
+            writeTime = System.nanoTime() - start - scanTime;
+
+            // Append to FFMeta File
+            appendFFMetaFile(directory);
+            appendTime = System.nanoTime() - start - scanTime - writeTime;
+        }
 
         // Debug
-        System.out.println("\n\n\n");
-        System.out.println("Scan Time: " + scanTime / 1_000_000 + "ms");
-        System.out.println("Write Time: " + writeTime / 1_000_000 + "ms");
-        System.out.println("Append Time: " + appendTime / 1_000_000 + "ms");
-        System.out.println("Total Time: " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        Log.info("\n\n\n");
+        Log.info("Scan Time: " + scanTime / 1_000_000 + "ms");
+        Log.info("Write Time: " + writeTime / 1_000_000 + "ms");
+        Log.info("Append Time: " + appendTime / 1_000_000 + "ms");
+        Log.info("Total Time: " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        Log.info("Episode Store: " + episodes.size() + " episodes, " + episodes.getFootprint() / 1024 + "KiB");
+    }
+
+    // Open a directory for converting single episodes, recovering interrupted conversions once
+    public static Converter open(Options options) throws IOException, InterruptedException {
+        var converter = new Converter(options, null, null, false);
+        converter.recover();
+        return converter;
+    }
+
+    // Convert a single episode, one at a time since the parser and the episode store are shared
+    public synchronized void convertEpisode(String name) throws IOException, InterruptedException {
+
+        // Variables
+        var path = options.directory();
+        var episode = index.add(name);
+        completed.remove(episode);
+
+        // Convert, keeping the cache on disk for the next run
+        try {
+            convertEpisode(path, name, episode);
+        } finally {
+            cache.flush();
+        }
+    }
+
+    // Finish or clean up the conversions of an interrupted run, closing again on failure
+    private void recover() throws IOException {
+        try {
+            journal.recover();
+        } catch (IOException e) {
+            try (journal) {
+                cache.close();
+            }
+            throw e;
+        }
+    }
+
+    // Close the duration cache and the journal of an opened directory
+    public void close() throws IOException {
+        try (journal) {
+            cache.close();
+        }
+    }
+
+    // Convert a single episode of a directory
+    private void convertEpisode(String path, String name, int episode) throws IOException, InterruptedException {
+
+        // Scan EDL File
+        if (scanEdlFile(path, episode) == null) return;
+        progress.plan(episodes.getVideoLength(episode));
+
+        // Write FFMeta File
+        if (!options.pipe()) {
+            new FFMetaWriter().write(Path.of(path, name + FFMETA), getChapters(episode));
+            record(Journal.State.WRITTEN, episode);
+        }
+
+        // Apply Metadata
+        convert(path, new File(path, getVideoName(episode)));
     }
 
     // Scan EDL Files
-    private void scanEdlFiles(String path) throws IOException {
+    private void scanEdlFiles(String path) throws IOException, InterruptedException {
+
+        // Get Episodes
+        int[] edls = index.getEdls();
+        Integer[] videoLengths = new Integer[edls.length];
+
+        // Look up cached Durations
+        ArrayList<Integer> pending = new ArrayList<>();
+        for (var i = 0; i < edls.length; i++) {
+            if (!hasVideo(path, edls[i]) || isDone(edls[i])) continue;
+            videoLengths[i] = cache.get(getVideo(path, edls[i]));
+            if (videoLengths[i] == null) pending.add(i);
+        }
 
-        // Get Files
-        ArrayList<File> files = new ArrayList<>(List.of(Objects.requireNonNull(new File(path).listFiles())));
-        files.removeIf(file -> !file.getName().endsWith(EDL));
+        // Probe missing Durations in batches
+        String[] videos = new String[pending.size()];
+        for (var i = 0; i < videos.length; i++) videos[i] = getVideo(path, edls[pending.get(i)]).toString();
+        int[] probed = getVideoLengths(videos);
+        for (var i = 0; i < videos.length; i++) {
+            videoLengths[pending.get(i)] = probed[i];
+            cache.put(Path.of(videos[i]), probed[i]);
+        }
 
-        // Sort Files
-        files.sort((f1, f2) -> {
-            Integer f1Int = Integer.parseInt(f1.getName().replace(EDL, ""));
-            Integer f2Int = Integer.parseInt(f2.getName().replace(EDL, ""));
-            return f1Int.compareTo(f2Int);
-        });
+        // Parse EDL Files
+        for (var i = 0; i < edls.length; i++) {
+            if (videoLengths[i] == null) continue;
+            record(Journal.State.PROBED, edls[i]);
+            scanEdlFile(path, edls[i], videoLengths[i]);
+        }
+    }
 
-        // Iterate over all Files
-        for (File file : files) if (file.isFile() && file.getName().endsWith(EDL)) {
+    // Scan the EDL File of an episode and return the episode, null if it is already converted or has no video
+    private Integer scanEdlFile(String path, int episode) throws IOException {
+        var videoLength = probe(path, episode);
+        if (videoLength == null) return null;
+        scanEdlFile(path, episode, videoLength);
+        return episode;
+    }
 
-            // Get File Name
-            String fileName = file.getName().replace(EDL, "");
-            Integer fileNameInt = Integer.parseInt(fileName);
+    // Get the duration of the video of an episode, null if it is already converted or has no video
+    private Integer probe(String path, int episode) throws IOException {
 
-            // Get Video Duration
-            var videoLength = getVideoLength(path + fileName + VIDEO);
-            videoLengths.put(fileNameInt, videoLength);
+        // Skip converted Episodes and EDL Files without a Video
+        if (!hasVideo(path, episode) || isDone(episode)) return null;
 
-            // Debug
-            System.out.println("Processing File: " + fileName);
-            System.out.println("\tDuration: " + videoLength + "ms");
-            System.out.println("\tChapters:");
+        // Get Video Duration
+        var video = getVideo(path, episode);
+        Integer videoLength = cache.get(video);
+        if (videoLength == null) {
+            videoLength = getVideoLength(video.toString());
+            cache.put(video, videoLength);
+        }
+        record(Journal.State.PROBED, episode);
+        return videoLength;
+    }
+
+    // Check if the video of an episode is already converted
+    private boolean isDone(int episode) throws IOException {
+
+        // Get File Name
+        String fileName = index.getName(episode);
+        if (!journal.isDone(getVideoName(episode), Path.of(options.directory(), fileName + EDL))) return false;
+
+        // Skip
+        completed.add(episode);
+        Metrics.SKIPPED.inc();
+        Log.info("Already converted: " + fileName);
+        return true;
+    }
 
-            // Create ArrayList
-            ArrayList<Chapter> chapters = new ArrayList<>();
+    // Check if the EDL file of an episode has a matching video, remembering it only if it exists
+    private boolean hasVideo(String path, int episode) {
+        if (index.getVideo(episode) != null) return true;
+        var video = findVideo(Path.of(path), index.getName(episode));
+        if (Files.isRegularFile(Path.of(path, video))) {
+            index.setVideo(episode, video);
+            return true;
+        }
 
-            // Read File
-            BufferedReader br = new BufferedReader(new FileReader(file));
+        // Skip
+        Metrics.SKIPPED.inc();
+        Log.info("Skipping: " + index.getName(episode) + EDL + " (no matching video)");
+        return false;
+    }
 
-            // Read Lines
-            String line;
-            var lineIndex = 0;
-            while ((line = br.readLine()) != null) {
+    // Check if the video of an episode has a parsed EDL file, skipping it otherwise as there are no chapters to apply
+    private boolean hasEdl(int episode) {
+        if (episodes.contains(episode)) return true;
 
-                // Count Line
-                lineIndex++;
+        // Skip
+        Metrics.SKIPPED.inc();
+        Log.info("Skipping: " + getVideoName(episode) + " (no EDL)");
+        return false;
+    }
 
-                // Split Line
-                String[] split = line.split(" ");
+    // Get the video of an episode
+    private Path getVideo(String path, int episode) {
+        return Path.of(path, getVideoName(episode));
+    }
 
-                // Convert to Milliseconds
-                var begin = new BigDecimal(split[0]).movePointRight(3).intValue();
-                var end = new BigDecimal(split[1]).movePointRight(3).intValue();
+    // Get the file name of the video of an episode, looking it up on disk if it wasn't discovered
+    private String getVideoName(int episode) {
+        var video = index.getVideo(episode);
+        if (video != null) return video;
+        video = findVideo(Path.of(options.directory()), index.getName(episode));
+        index.setVideo(episode, video);
+        return video;
+    }
 
-                // Check if Intro or Outro
-                if (lineIndex == 1 && videoLength / 2 > end) chapters.add(new Chapter(begin, end, true, false));
-                else chapters.add(new Chapter(begin, end, false, true));
+    // Find the video of an episode name, the default extension if there is none
+    public static String findVideo(Path directory, String name) {
+        for (var extension : VIDEOS) if (Files.isRegularFile(directory.resolve(name + extension))) return name + extension;
+        return name + VIDEO;
+    }
 
-                // Debug
-                System.out.println("\t\t" + begin + "ms - " + end + "ms" + (lineIndex == 1 && videoLength / 2 > end ? INTRO : OUTRO + "\n"));
-            }
+    // Get the video extension of a file name, null if it isn't a video
+    public static String getVideoExtension(String fileName) {
+        for (var extension : VIDEOS) if (fileName.endsWith(extension)) return extension;
+        return null;
+    }
 
-            // Add Chapters
-            edlData.put(fileNameInt, chapters);
+    // Parse the EDL File of a probed episode
+    private void scanEdlFile(String path, int episode, int videoLength) throws IOException {
+
+        // Get File Name
+        String fileName = index.getName(episode);
+
+        // Debug
+        if (Log.isVerbose()) Log.debug("Processing File: " + fileName + "\n\tDuration: " + videoLength + "ms\n\tChapters:");
+
+        // Create ArrayList
+        ArrayList<Chapter> chapters = new ArrayList<>();
+
+        // Parse File
+        var entries = parser.parse(Path.of(path, fileName + EDL));
+        for (var lineIndex = 1; lineIndex <= entries; lineIndex++) {
+
+            // Get Milliseconds
+            var begin = parser.begin(lineIndex - 1);
+            var end = parser.end(lineIndex - 1);
+
+            // Check if Intro or Outro
+            if (lineIndex == 1 && videoLength / 2 > end) chapters.add(new Chapter(begin, end, true, false));
+            else chapters.add(new Chapter(begin, end, false, true));
+
+            // Debug
+            if (Log.isVerbose()) Log.debug("\t\t" + begin + "ms - " + end + "ms" + (lineIndex == 1 && videoLength / 2 > end ? INTRO : OUTRO + "\n"));
         }
+
+        // Add Chapters
+        episodes.put(episode, videoLength, chapters);
     }
 
     // Write FFMeta File
     private void writeFFMetaFile(String path) throws IOException {
 
+        // Reusable Writer
+        FFMetaWriter writer = new FFMetaWriter();
+
         // Iterate over all chapters
-        for (var i : edlData.keySet()) {
+        for (var i : episodes.getEpisodes()) {
 
             // Get Chapters
-            ArrayList<Chapter> chapters = edlData.get(i);
+            ArrayList<Chapter> chapters = getChapters(i);
 
-            // Intro or Outro
-            if (chapters.size() == 1) {
+            // Write File
+            writer.write(Path.of(path, index.getName(i) + FFMETA), chapters);
+            record(Journal.State.WRITTEN, i);
+        }
+    }
 
-                // Get Chapter
-                Chapter chapter = chapters.getFirst();
+    // Get all chapters of an episode including the content in between
+    private ArrayList<Chapter> getChapters(int i) {
+        return createChapters(episodes.getChapters(i), episodes.getVideoLength(i));
+    }
 
-                // Create Skip Chapters
-                Chapter skipChapter = new Chapter(chapter.end, videoLengths.get(i), false, false);
+    // Fill the gaps around the intro and outro of an EDL with content chapters
+    static ArrayList<Chapter> createChapters(ArrayList<Chapter> chapters, int videoLength) {
 
-                // Create pre-Intro
-                Chapter preChapter = new Chapter(0, chapter.begin, false, false);
+        // Intro or Outro
+        if (chapters.size() == 1) {
 
-                // Add Chapters
-                chapters = new ArrayList<>();
-                if (chapter.begin > 0) chapters.add(preChapter);
-                chapters.add(chapter);
-                chapters.add(skipChapter);
-            }
+            // Get Chapter
+            Chapter chapter = chapters.getFirst();
 
-            // Intro and Outro
-            else if (chapters.size() == 2) {
+            // Create Skip Chapters
+            Chapter skipChapter = new Chapter(chapter.end, videoLength, false, false);
 
-                // Get Chapters
-                Chapter intro = chapters.getFirst();
-                Chapter outro = chapters.getLast();
+            // Create pre-Intro
+            Chapter preChapter = new Chapter(0, chapter.begin, false, false);
 
-                // Create Skip Chapters
-                Chapter introSkip = new Chapter(intro.end, outro.begin, false, false);
-                Chapter outroSkip = new Chapter(outro.end, videoLengths.get(i), false, false);
+            // Add Chapters
+            chapters = new ArrayList<>();
+            if (chapter.begin > 0) chapters.add(preChapter);
+            chapters.add(chapter);
+            chapters.add(skipChapter);
+        }
 
-                // Create pre-Intro
-                Chapter preIntro = new Chapter(0, intro.begin, false, false);
+        // Intro and Outro
+        else if (chapters.size() == 2) {
 
-                // Add Chapters
-                chapters = new ArrayList<>();
-                if (intro.begin > 0) chapters.add(preIntro);
-                chapters.add(intro);
-                chapters.add(introSkip);
-                chapters.add(outro);
-                chapters.add(outroSkip);
-            }
+            // Get Chapters
+            Chapter intro = chapters.getFirst();
+            Chapter outro = chapters.getLast();
 
-            // Create File
-            var file = new File(path + i + FFMETA);
+            // Create Skip Chapters
+            Chapter introSkip = new Chapter(intro.end, outro.begin, false, false);
+            Chapter outroSkip = new Chapter(outro.end, videoLength, false, false);
 
-            // Write Header
-            write(file.toPath(), HEADER.getBytes());
+            // Create pre-Intro
+            Chapter preIntro = new Chapter(0, intro.begin, false, false);
 
-            // Write Chapters
-            for (var chapter : chapters) write(file.toPath(), String.format(CHAPTER, chapter.begin, chapter.end, chapter.isIntro ? INTRO : chapter.isOutro ? OUTRO : CONTENT).getBytes(), APPEND);
+            // Add Chapters
+            chapters = new ArrayList<>();
+            if (intro.begin > 0) chapters.add(preIntro);
+            chapters.add(intro);
+            chapters.add(introSkip);
+            chapters.add(outro);
+            chapters.add(outroSkip);
         }
+
+        return chapters;
     }
 
     // Append to FFMeta File
     private void appendFFMetaFile(String path) throws IOException, InterruptedException {
 
+        // Group Files by Disk
+        ArrayList<Path> files = new ArrayList<>();
+        for (var episode : index.getVideos()) {
+            if (completed.contains(episode) || !hasEdl(episode)) continue;
+            files.add(Path.of(path, getVideoName(episode)));
+            progress.plan(episodes.getVideoLength(episode));
+        }
+        DiskScheduler scheduler = new DiskScheduler(files, options.jobsPerDisk());
 
-        // Variables
-        ArrayList<File> files = new ArrayList<>(List.of(Objects.requireNonNull(new File(path).listFiles())));
-        files.removeIf(file -> !file.getName().endsWith(VIDEO));
-
-        // Sort Files
-        files.sort((f1, f2) -> {
-            Integer f1Int = Integer.parseInt(f1.getName().replace(VIDEO, ""));
-            Integer f2Int = Integer.parseInt(f2.getName().replace(VIDEO, ""));
-            return f1Int.compareTo(f2Int);
+        // Apply Metadata
+        AtomicInteger queued = new AtomicInteger(files.size());
+        Metrics.QUEUED_REMUXES.add(files.size());
+        List<Callable<Void>> workers = scheduler.schedule(jobs, limits, file -> {
+            queued.decrementAndGet();
+            Metrics.QUEUED_REMUXES.add(-1);
+            convert(path, file.toFile());
+        });
+        Log.info("Remuxing " + files.size() + " videos on " + scheduler.getDisks() + " disks");
+        try {
+            runAll(Math.max(1, workers.size()), workers);
+        } finally {
+            Metrics.QUEUED_REMUXES.add(-queued.get());
+        }
+        if (progress.getTransfers() > 0) Log.info("Remux Total: " + progress.summary());
+    }
+
+    // Convert episode by episode in directory order, releasing each before the next
+    private int runStream(String path) throws IOException, InterruptedException {
+        var count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Path.of(path), "*" + EDL)) {
+            for (Path edl : stream) {
+
+                // Skip hidden Files
+                var name = edl.getFileName().toString();
+                if (name.startsWith(".") || !Files.isRegularFile(edl)) continue;
+
+                // Convert and release Episode
+                var episode = name.substring(0, name.length() - EDL.length());
+                convertEpisode(path, episode, index.add(episode));
+                episodes.clear();
+                index.clear();
+                completed.clear();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Run scan, write and append as stages connected by bounded queues
+    private void runPipeline(String path) throws IOException, InterruptedException {
+
+        // Queues
+        BlockingQueue<Integer> scanned = new ArrayBlockingQueue<>(PIPELINE_CAPACITY);
+        BlockingQueue<Integer> written = new ArrayBlockingQueue<>(PIPELINE_CAPACITY);
+        ArrayList<Callable<Void>> stages = new ArrayList<>();
+
+        // Parse and Probe
+        stages.add(() -> {
+            for (var edl : index.getEdls()) {
+                var episode = scanEdlFile(path, edl);
+                if (episode == null) continue;
+                progress.plan(episodes.getVideoLength(episode));
+                scanned.put(episode);
+            }
+            for (var video : index.getVideos()) if (!completed.contains(video)) hasEdl(video);
+            scanned.put(END);
+            return null;
+        });
+
+        // Write Metadata
+        stages.add(() -> {
+            FFMetaWriter writer = new FFMetaWriter();
+            int episode;
+            while ((episode = scanned.take()) != END) {
+                if (!options.pipe()) {
+                    writer.write(Path.of(path, index.getName(episode) + FFMETA), getChapters(episode));
+                    record(Journal.State.WRITTEN, episode);
+                }
+                written.put(episode);
+                Metrics.QUEUED_REMUXES.add(1);
+            }
+            for (var i = 0; i < jobs; i++) written.put(END);
+            return null;
         });
 
+        // Remux
+        for (var i = 0; i < jobs; i++) stages.add(() -> {
+            int episode;
+            while ((episode = written.take()) != END) {
+                Metrics.QUEUED_REMUXES.add(-1);
+                limits.run(Path.of(path, getVideoName(episode)), file -> convert(path, file.toFile()));
+            }
+            return null;
+        });
+
+        // Run, leaving no queued Episodes behind on failure
+        try {
+            runAll(stages.size(), stages);
+        } finally {
+            for (var episode : written) if (episode != END) Metrics.QUEUED_REMUXES.add(-1);
+        }
+        if (progress.getTransfers() > 0) Log.info("Remux Total: " + progress.summary());
+    }
+
+    // Run tasks on virtual threads, at most the given number at once, and cancel the rest once one fails
+    private static void runAll(int parallelism, List<Callable<Void>> tasks) throws IOException, InterruptedException {
+
+        // Submit Tasks, tracking their ffmpeg and ffprobe processes
+        ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor();
+        ExecutorCompletionService<Void> completion = new ExecutorCompletionService<>(pool);
+        Semaphore permits = new Semaphore(parallelism);
+        Set<Process> children = ConcurrentHashMap.newKeySet();
+        for (var task : tasks) completion.submit(() -> {
+            permits.acquire();
+            try {
+                return Processes.track(children, task);
+            } finally {
+                permits.release();
+            }
+        });
+
+        // Wait in completion order
+        try {
+            for (var i = 0; i < tasks.size(); i++) completion.take().get();
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to convert: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+
+            // Cancel the rest, blocked process reads only end with their process, and wait until no task uses the journal
+            pool.shutdownNow();
+            Processes.destroy(children);
+            pool.close();
+        }
+    }
+
+    // Convert a single video file
+    private void convert(String path, File file) throws IOException, InterruptedException {
+
+        // Variables
+        var fileName = file.getName();
+        var newFile = Path.of(path, "." + fileName);
+        var episode = index.add(fileName.substring(0, fileName.lastIndexOf('.')));
+        if (index.getVideo(episode) == null) index.setVideo(episode, fileName);
+
+        // Skip converted Episodes
+        if (completed.contains(episode)) {
+            progress.skip(episodes.getVideoLength(episode));
+            return;
+        }
+
+        // Skip Videos which already have these Chapters
+        if (episodes.contains(episode) && hasChapters(file, getChapters(episode))) {
+            record(Journal.State.SWAPPED, episode);
+            progress.skip(episodes.getVideoLength(episode));
+            Metrics.SKIPPED.inc();
+            Log.info("Already chaptered: " + fileName);
+            return;
+        }
+
+        // Write Chapters in place
+        var backend = ContainerBackend.select(file.toPath());
+        if ((options.inPlace() || backend.prefersInPlace()) && backend.supportsInPlace() && episodes.contains(episode)) try {
+            record(Journal.State.REWRITING, episode);
+            var chapters = getChapters(episode);
+            var written = backend.writeChapters(file.toPath(), chapters);
+            verifyChapters(backend, file.toPath(), chapters);
+            cache.put(file.toPath(), episodes.getVideoLength(episode));
+            record(Journal.State.SWAPPED, episode);
+            progress.skip(episodes.getVideoLength(episode));
+            Metrics.IN_PLACE.inc();
+            Metrics.REWRITTEN_BYTES.observe(written);
+            Log.info("Successfully converted in place: " + fileName);
+            return;
+        } catch (ContainerBackend.PartialWriteException e) {
+            progress.skip(episodes.getVideoLength(episode));
+            Metrics.FAILED.inc();
+            Log.error("Failed to convert in place: " + fileName + " (" + e.getMessage() + "), not remuxing a modified file");
+            return;
+        } catch (IOException e) {
+            Log.info("Failed to convert in place: " + fileName + " (" + e.getMessage() + "), falling back to remux");
+        }
+
+        // Render Metadata for stdin
+        byte[] metadata = null;
+        if (options.pipe()) metadata = new FFMetaWriter().toByteArray(getChapters(episode));
+
         // Apply Metadata
-        for (File file : files) {
+        var start = System.nanoTime();
+        boolean applied = FFmpegBackend.remux(path, fileName, metadata, episodes.getVideoLength(episode), progress);
+        Metrics.REMUX_SECONDS.observeSince(start);
+
+        // Flush the Remux before it may be swapped in
+        if (applied) try (var channel = FileChannel.open(newFile, READ)) {
+            channel.force(true);
+            record(Journal.State.REMUXED, episode);
+        } catch (IOException e) {
+            Log.error("Failed to flush: " + fileName + " (" + e.getMessage() + ")");
+            applied = false;
+        }
 
-            // Variables
-            var fileName = file.getName();
-            var newFileName = "." + fileName;
+        // Replace Old File
+        boolean replaced = false;
+        if (applied) try {
+            Files.move(newFile, file.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+            replaced = true;
+        } catch (IOException e) {
+            Log.error("Failed to replace: " + fileName + " (" + e.getMessage() + ")");
+        }
 
-            // Apply Metadata
-            applyMetaData(path, file.getName());
+        // Clean Up
+        if (!replaced) Files.deleteIfExists(newFile);
 
-            // Delete Old File
-            boolean deleted = file.delete();
+        // Remember the new file's identity, the duration is unchanged
+        if (replaced && episodes.contains(episode)) cache.put(file.toPath(), episodes.getVideoLength(episode));
+        if (replaced) record(Journal.State.SWAPPED, episode);
 
-            // Rename New File
-            boolean renamed = new File(path + newFileName).renameTo(new File(path + fileName));
+        // Count
+        if (replaced) {
+            Metrics.REMUXED.inc();
+            Metrics.REWRITTEN_BYTES.observe(Files.size(file.toPath()));
+        } else Metrics.FAILED.inc();
 
-            // Debug
-            if (deleted && renamed) System.out.println("Successfully converted: " + fileName);
-            else System.out.println("Failed to convert: " + fileName);
+        // Debug
+        if (replaced) Log.info("Successfully converted: " + fileName);
+        else Log.error("Failed to convert: " + fileName);
+    }
+
+    // Check if a video already contains exactly these chapters
+    private static boolean hasChapters(File video, List<Chapter> chapters) {
+
+        // Only read Chapters natively, a process per file costs more than it saves
+        var backend = ContainerBackend.select(video.toPath());
+        if (backend == ContainerBackend.FFMPEG) return false;
+
+        // Read the Chapters players show, for an MP4 from its chapter track if it has one
+        List<ContainerBackend.Mark> marks;
+        try {
+            marks = backend.readChapters(video.toPath());
+        } catch (IOException e) {
+            return false;
         }
+
+        return matches(marks, chapters);
     }
 
-    // Get the length of a video file in milliseconds
-    private static int getVideoLength(String filePath) {
+    // Read back chapters written in place, the file was modified if they don't match
+    private static void verifyChapters(ContainerBackend backend, Path video, List<Chapter> chapters) throws ContainerBackend.PartialWriteException {
         try {
+            if (!matches(backend.readChapters(video), chapters)) throw new IOException("Chapters don't read back");
+        } catch (IOException e) {
+            throw new ContainerBackend.PartialWriteException(video, e);
+        }
+    }
 
-            // Command to run ffprobe and get the duration in seconds
-            String[] command = {
-                    "ffprobe",
-                    "-v", "error",
-                    "-show_entries", "format=duration",
-                    "-of", "default=noprint_wrappers=1:nokey=1",
-                    filePath
-            };
+    // Compare the chapters read from a video with the expected chapters
+    private static boolean matches(List<ContainerBackend.Mark> marks, List<Chapter> chapters) {
+        if (marks.size() != chapters.size()) return false;
+        for (var i = 0; i < marks.size(); i++) {
+            var mark = marks.get(i);
+            var chapter = chapters.get(i);
+            if (mark.begin() != chapter.begin || !mark.title().equals(chapter.title())) return false;
+        }
 
-            // Run ffprobe
-            ProcessBuilder pb = new ProcessBuilder(command);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
+        return true;
+    }
 
-            // Read the output of ffprobe
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String durationString = reader.readLine();
-            process.waitFor();
+    // Record a state transition of an episode in the journal
+    private void record(Journal.State state, int episode) throws IOException {
+        journal.record(state, getVideoName(episode), Path.of(options.directory(), index.getName(episode) + EDL));
+    }
 
-            // Return the duration in milliseconds
-            if (durationString != null) return new BigDecimal(durationString.trim()).movePointRight(3).intValue();
-            else throw new IOException("Failed to get duration from ffprobe");
+    // Get the length of a video file in milliseconds
+    private static int getVideoLength(String filePath) throws IOException {
+        var start = System.nanoTime();
+        var videoLength = readVideoLength(filePath);
+        if (videoLength < 0) videoLength = ContainerBackend.FFMPEG.getDuration(Path.of(filePath));
+        Metrics.PROBED.inc();
+        Metrics.PROBE_SECONDS.observeSince(start);
+        return videoLength;
+    }
 
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException("Failed to get video duration: " + e.getMessage());
+    // Read the length of a video file in milliseconds with a native backend, -1 if there is none
+    private static int readVideoLength(String filePath) {
+        var backend = ContainerBackend.select(Path.of(filePath));
+        if (backend != ContainerBackend.FFMPEG) try {
+            return backend.getDuration(Path.of(filePath));
+        } catch (IOException ignored) {
+            // Fall back to ffprobe
         }
+        return -1;
     }
 
-    // Apply metadata to a video file
-    private static void applyMetaData(String path, String name) throws IOException, InterruptedException {
+    // Get the lengths of many video files in milliseconds, probing the ones without native support in batches
+    private static int[] getVideoLengths(String[] filePaths) throws IOException, InterruptedException {
+
+        // Split into Batches, small enough to keep every process slot busy
+        int[] videoLengths = new int[filePaths.length];
+        AtomicInteger queued = new AtomicInteger(filePaths.length);
+        Metrics.QUEUED_PROBES.add(filePaths.length);
+        var batchSize = Math.max(1, Math.min(PROBE_BATCH, (filePaths.length + Processes.getLimit() - 1) / Processes.getLimit()));
+        ArrayList<Callable<Void>> batches = new ArrayList<>();
+        for (var first = 0; first < filePaths.length; first += batchSize) {
+            var from = first;
+            var to = Math.min(filePaths.length, first + batchSize);
+            batches.add(() -> {
+
+                // Read natively if possible
+                ArrayList<Integer> unknown = new ArrayList<>();
+                for (var i = from; i < to; i++) {
+                    var start = System.nanoTime();
+                    videoLengths[i] = readVideoLength(filePaths[i]);
+                    if (videoLengths[i] < 0) unknown.add(i);
+                    else probed(start, 1, queued);
+                }
+
+                // Probe the rest with a single process
+                if (unknown.isEmpty()) return null;
+                var start = System.nanoTime();
+                String[] batch = new String[unknown.size()];
+                for (var i = 0; i < batch.length; i++) batch[i] = filePaths[unknown.get(i)];
+                int[] probed = FFmpegBackend.getDurations(batch);
+                for (var i = 0; i < batch.length; i++) videoLengths[unknown.get(i)] = probed[i] >= 0 ? probed[i] : ContainerBackend.FFMPEG.getDuration(Path.of(batch[i]));
+                probed(start, batch.length, queued);
+                return null;
+            });
+        }
 
-        // Get the file name and extension
-        String fileName = name.substring(0, name.lastIndexOf('.'));
-        String extension = name.substring(name.lastIndexOf('.') + 1);
+        // Run Batches
+        try {
+            runAll(Processes.getLimit(), batches);
+        } finally {
+            Metrics.QUEUED_PROBES.add(-queued.get());
+        }
+        return videoLengths;
+    }
 
-        System.out.println("Applying metadata to: " + fileName + "." + extension);
+    // Count probed videos, splitting the time since the start evenly across them
+    private static void probed(long start, int count, AtomicInteger queued) {
+        var seconds = (System.nanoTime() - start) / 1e9 / count;
+        for (var i = 0; i < count; i++) {
+            Metrics.PROBED.inc();
+            Metrics.PROBE_SECONDS.observe(seconds);
+        }
+        queued.addAndGet(-count);
+        Metrics.QUEUED_PROBES.add(-count);
+    }
 
-        // Command to run ffmpeg and apply metadata
-        String[] command = {
-                "ffmpeg",
-                "-i", path + name,
-                "-i", path + fileName + ".ffmeta",
-                "-map_metadata", "1",
-                "-c:v", "copy",
-                "-c:a", "copy",
-                path + "." + fileName + "." + extension
-        };
+    // Default number of parallel remux jobs based on cores and disks
+    private static int defaultJobs(String path, int perDisk) {
 
-        // Run ffmpeg
-        ProcessBuilder pb = new ProcessBuilder(command);
-        pb.redirectErrorStream(true);
-        Process process = pb.start();
+        // Count Disks
+        HashSet<FileStore> disks = new HashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Path.of(path), "*{" + String.join(",", VIDEOS) + "}")) {
+            disks.add(Files.getFileStore(Path.of(path)));
+            for (Path file : files) if (Files.isSymbolicLink(file)) disks.add(Files.getFileStore(file));
+        } catch (IOException ignored) {}
 
-        // Read the output of ffmpeg
-        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-        String line;
-        while ((line = reader.readLine()) != null) System.out.println(line);
-        process.waitFor();
+        // Limit by Disks and Cores
+        return DiskScheduler.defaultJobs(disks, perDisk);
     }
 
     // Main
     public static void main(String[] args) throws URISyntaxException, IOException, InterruptedException {
 
-        // Variables
-        String directory;
+        // Parse Options
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            Log.error(e.getMessage());
+            Log.flush();
+            System.exit(2);
+            return;
+        }
 
-        // Get Directory
-        if (args.length == 0) directory = new File(Converter.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getParent() + "/";
-        else directory = args[0];
+        // Run
+        if (options.processes() != Options.AUTO) Processes.setLimit(options.processes());
+        Log.setLevel(options.logLevel());
+        try {
+            if (options.watch()) new Watcher(options);
+            else {
+                if (options.recursive()) new Library(options);
+                else new Converter(options);
+                if (options.metricsFile() != null) writeMetrics(Path.of(options.metricsFile()));
+            }
+        } finally {
+            Log.flush();
+        }
+    }
 
-        new Converter(directory);
+    // Dump the metrics of a batch run
+    private static void writeMetrics(Path file) {
+        try {
+            Metrics.write(file);
+            Log.info("Metrics: " + file);
+        } catch (IOException e) {
+            Log.error("Failed to write metrics: " + file + " (" + e.getMessage() + ")");
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,154 @@
+import java.io.IOException;
+
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+public class DiskScheduler {
+
+    // Job
+    @FunctionalInterface
+    public interface Job {
+        void run(Path file) throws Exception;
+    }
+
+    // Record
+    private record Entry(Path file, FileStore disk, long size) {}
+
+    // Limits: permits for all jobs and per disk, shared by the schedulers of several directories
+    public static final class Limits {
+
+        // Attributes
+        private final Semaphore total;
+        private final int perDisk;
+        private final ConcurrentHashMap<FileStore, Semaphore> disks;
+
+        // Constructor
+        public Limits(int jobs, int perDisk) {
+            total = new Semaphore(Math.max(1, jobs));
+            this.perDisk = Math.max(AUTO, perDisk);
+            disks = new ConcurrentHashMap<>();
+        }
+
+        // Run a job for a file once its disk and the total have a free permit
+        public void run(Path file, Job job) throws Exception {
+            run(file, Files.getFileStore(file), job);
+        }
+
+        // Run a job for a file on a known disk once its disk and the total have a free permit
+        private void run(Path file, FileStore disk, Job job) throws Exception {
+            Semaphore permits = disks.computeIfAbsent(disk, store -> new Semaphore(limit(store, perDisk)));
+            permits.acquire();
+            try {
+                total.acquire();
+                try {
+                    job.run(file);
+                } finally {
+                    total.release();
+                }
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    // Constants
+    public static final int AUTO = 0; // 1 job on rotational disks, otherwise only limited by the total
+    private static final Path SYS_BLOCK = Path.of("/sys/class/block");
+
+    // Attributes
+    private final LinkedHashMap<FileStore, ArrayList<Entry>> disks;
+    private final int perDisk;
+
+    // Constructor
+    public DiskScheduler(List<Path> files, int perDisk) throws IOException {
+
+        // Initialize Attributes
+        this.disks = new LinkedHashMap<>();
+        this.perDisk = Math.max(AUTO, perDisk);
+
+        // Group Files by Disk
+        for (Path file : files) {
+            var disk = Files.getFileStore(file);
+            disks.computeIfAbsent(disk, store -> new ArrayList<>()).add(new Entry(file, disk, Files.size(file)));
+        }
+
+        // Largest Files first, so the longest remuxes don't end up last
+        for (var entries : disks.values()) entries.sort(Comparator.comparingLong(Entry::size).reversed());
+    }
+
+    // Get the number of disks the files are on
+    public int getDisks() {
+        return disks.size();
+    }
+
+    // Create workers that run a job for every file, at most the disk's limit per disk and jobs in total at once
+    public List<Callable<Void>> schedule(int jobs, Job job) {
+        return schedule(jobs, new Limits(jobs, perDisk), job);
+    }
+
+    // Create workers that run a job for every file, waiting for permits of limits shared with other schedulers
+    public List<Callable<Void>> schedule(int jobs, Limits limits, Job job) {
+
+        // Variables
+        ArrayList<Callable<Void>> workers = new ArrayList<>();
+
+        // Create Workers per Disk
+        for (var disk : disks.entrySet()) {
+            var entries = disk.getValue();
+            var count = Math.min(Math.min(limit(disk.getKey(), perDisk), Math.max(1, jobs)), entries.size());
+            ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>(entries);
+            for (var i = 0; i < count; i++) workers.add(() -> {
+                for (Entry entry; (entry = queue.poll()) != null; ) limits.run(entry.file, entry.disk, job);
+                return null;
+            });
+        }
+
+        return workers;
+    }
+
+    // Get the number of parallel jobs for disks, the sum of their limits but at most one per core
+    public static int defaultJobs(Collection<FileStore> disks, int perDisk) {
+        var cores = Runtime.getRuntime().availableProcessors();
+        long jobs = 0;
+        for (var disk : disks) jobs += limit(disk, perDisk);
+        return (int) Math.max(1, Math.min(cores, jobs));
+    }
+
+    // Get the number of parallel jobs on a disk, AUTO picks 1 for rotational disks
+    public static int limit(FileStore disk, int perDisk) {
+        if (perDisk > AUTO) return perDisk;
+        return isRotational(disk) ? 1 : Runtime.getRuntime().availableProcessors();
+    }
+
+    // Check if a disk spins, as reported by Linux for the block device, false if it is unknown
+    public static boolean isRotational(FileStore disk) {
+        try {
+
+            // Resolve Device, e.g. /dev/mapper/root to dm-0
+            Path device = Path.of(disk.name());
+            if (!device.isAbsolute() || !Files.exists(device)) return false;
+            Path block = SYS_BLOCK.resolve(device.toRealPath().getFileName().toString()).toRealPath();
+
+            // Partitions share the queue of their disk one level up
+            for (Path directory = block; directory != null && directory.startsWith("/sys"); directory = directory.getParent()) {
+                Path rotational = directory.resolve("queue").resolve("rotational");
+                if (Files.isRegularFile(rotational)) return Files.readString(rotational).trim().equals("1");
+            }
+        } catch (IOException | InvalidPathException | SecurityException ignored) {
+            // Unknown
+        }
+        return false;
+    }
+}
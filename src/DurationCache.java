@@ -0,0 +1,161 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.HashMap;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+public class DurationCache implements Closeable {
+
+    // Record
+    private record Entry(long size, long modified, int duration) {}
+
+    // Constants
+    public static final String FILE_NAME = ".durations.cache";
+    private static final int MAGIC = 0x49534243; // "ISBC"
+    private static final int VERSION = 1;
+
+    // Attributes
+    private final Path file;
+    private final HashMap<String, Entry> entries;
+    private DataOutputStream out;
+    private int records;
+
+    // Constructor
+    public DurationCache(Path directory) throws IOException {
+
+        // Initialize Attributes
+        file = directory.resolve(FILE_NAME);
+        entries = new HashMap<>();
+
+        // Load Entries
+        if (Files.isRegularFile(file)) load();
+
+        // Compact if most records are stale
+        if (records > 2 * entries.size()) compact();
+    }
+
+    // Constructor for a cache that remembers nothing
+    private DurationCache() {
+        file = null;
+        entries = new HashMap<>();
+    }
+
+    // Create a cache that remembers nothing and keeps no index in memory
+    public static DurationCache disabled() {
+        return new DurationCache();
+    }
+
+    // Get the cached duration of a video, null if unknown or changed
+    public synchronized Integer get(Path video) throws IOException {
+
+        // Get Entry
+        Entry entry = entries.get(video.getFileName().toString());
+        if (entry == null) return null;
+
+        // Check Identity
+        var attributes = Files.readAttributes(video, BasicFileAttributes.class);
+        if (entry.size != attributes.size() || entry.modified != attributes.lastModifiedTime().toMillis()) return null;
+        return entry.duration;
+    }
+
+    // Remember the duration of a video
+    public synchronized void put(Path video, int duration) throws IOException {
+        if (file == null) return;
+
+        // Create Entry
+        var attributes = Files.readAttributes(video, BasicFileAttributes.class);
+        var name = video.getFileName().toString();
+        var entry = new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), duration);
+        entries.put(name, entry);
+
+        // Append Record
+        if (out == null) open();
+        writeRecord(out, name, entry);
+        records++;
+    }
+
+    // Flush appended records to disk
+    public synchronized void flush() throws IOException {
+        if (out != null) out.flush();
+    }
+
+    // Flush and close the index
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) out.close();
+        out = null;
+    }
+
+    // Read all records, later records override earlier ones
+    private void load() throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+
+            // Check Header
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                records = Integer.MAX_VALUE;
+                return;
+            }
+
+            // Read Records
+            while (in.available() > 0) {
+                var name = in.readUTF();
+                var entry = new Entry(in.readLong(), in.readLong(), in.readInt());
+                entries.put(name, entry);
+                records++;
+            }
+
+        } catch (EOFException e) {
+            // Truncated trailing record, force a rewrite before appending
+            records = Integer.MAX_VALUE;
+        } catch (IOException e) {
+
+            // Corrupt record, the cache is only an optimization so it is rebuilt
+            Log.error("Rebuilding corrupt duration cache: " + file + " (" + e + ")");
+            entries.clear();
+            records = Integer.MAX_VALUE;
+        }
+    }
+
+    // Rewrite the index with only the live entries
+    private void compact() throws IOException {
+
+        // Write Temp File
+        Path temp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (var tempOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            tempOut.writeInt(MAGIC);
+            tempOut.writeInt(VERSION);
+            for (var entry : entries.entrySet()) writeRecord(tempOut, entry.getKey(), entry.getValue());
+        }
+
+        // Replace Index
+        Files.move(temp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+        records = entries.size();
+    }
+
+    // Open the index for appending
+    private void open() throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) == 0) compact();
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, CREATE, APPEND)));
+    }
+
+    // Write a single record
+    private static void writeRecord(DataOutputStream out, String name, Entry entry) throws IOException {
+        out.writeUTF(name);
+        out.writeLong(entry.size);
+        out.writeLong(entry.modified);
+        out.writeInt(entry.duration);
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import java.util.Arrays;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+public class EdlParser {
+
+    // Constants
+    public static final int INITIAL_CAPACITY = 4096;
+
+    // Attributes
+    private byte[] buffer;
+    private int[] times;
+    private int entries;
+
+    // Constructor
+    public EdlParser() {
+        buffer = new byte[INITIAL_CAPACITY];
+        times = new int[16];
+    }
+
+    // Parse an EDL file into the reusable buffers and return the number of entries
+    public int parse(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, READ)) {
+
+            // Grow Buffer
+            var size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) throw new IOException("EDL file too large: " + file.getFileName());
+            if (size > buffer.length) buffer = new byte[(int) size];
+
+            // Read File
+            ByteBuffer wrapper = ByteBuffer.wrap(buffer, 0, (int) size);
+            while (wrapper.hasRemaining()) if (channel.read(wrapper) < 0) break;
+            return parse(buffer, wrapper.position());
+        }
+    }
+
+    // Parse EDL lines "begin end [action ...]" with decimal seconds into milliseconds
+    public int parse(byte[] data, int length) throws IOException {
+
+        // Variables
+        entries = 0;
+        var position = 0;
+        var line = 0;
+
+        // Iterate over Lines
+        while (position < length) {
+            line++;
+
+            // Skip leading Whitespace and empty Lines
+            position = skipBlanks(data, position, length);
+            if (position >= length) break;
+            if (data[position] == '\n' || data[position] == '\r') {
+                position++;
+                continue;
+            }
+
+            // Begin
+            var begin = parseMillis(data, position, length, line);
+            position = skipBlanks(data, endOfNumber(data, position, length), length);
+
+            // End
+            var end = parseMillis(data, position, length, line);
+            position = endOfNumber(data, position, length);
+
+            // Store Entry
+            if (2 * entries + 2 > times.length) times = Arrays.copyOf(times, times.length * 2);
+            times[2 * entries] = begin;
+            times[2 * entries + 1] = end;
+            entries++;
+
+            // Skip remaining Columns
+            while (position < length && data[position] != '\n') position++;
+            position++;
+        }
+
+        return entries;
+    }
+
+    // Get the number of parsed entries
+    public int size() {
+        return entries;
+    }
+
+    // Get the begin of an entry in milliseconds
+    public int begin(int entry) {
+        return times[2 * entry];
+    }
+
+    // Get the end of an entry in milliseconds
+    public int end(int entry) {
+        return times[2 * entry + 1];
+    }
+
+    // Parse decimal seconds into milliseconds, rounding half up once on the fourth decimal
+    private static int parseMillis(byte[] data, int position, int length, int line) throws IOException {
+
+        // Variables
+        long millis = 0;
+        var digits = 0;
+
+        // Whole Seconds
+        while (position < length && isDigit(data[position])) {
+            millis = millis * 10 + (data[position++] - '0');
+            digits++;
+            if (millis > Integer.MAX_VALUE / 1000) throw new IOException("Time out of range in line " + line);
+        }
+        millis *= 1000;
+
+        // Fraction
+        if (position < length && data[position] == '.') {
+            position++;
+            var scale = 100;
+            while (position < length && isDigit(data[position])) {
+                var digit = data[position++] - '0';
+                if (scale > 0) millis += (long) digit * scale;
+                else if (scale == 0 && digit >= 5) millis++;
+                scale = scale > 0 ? scale / 10 : -1; // 0 marks the rounding digit, every later digit is ignored
+                digits++;
+            }
+        }
+
+        // Validate
+        if (digits == 0) throw new IOException("Invalid time in line " + line);
+        if (millis > Integer.MAX_VALUE) throw new IOException("Time out of range in line " + line);
+        return (int) millis;
+    }
+
+    // Skip the digits and decimal point of a number
+    private static int endOfNumber(byte[] data, int position, int length) {
+        while (position < length && (isDigit(data[position]) || data[position] == '.')) position++;
+        return position;
+    }
+
+    // Skip spaces and tabs
+    private static int skipBlanks(byte[] data, int position, int length) {
+        while (position < length && (data[position] == ' ' || data[position] == '\t')) position++;
+        return position;
+    }
+
+    // Check for an ASCII digit
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.IOException;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+public class EpisodeIndex {
+
+    // Key: a file name split once into text and number chunks for natural ordering
+    public record Key(String name, String[] chunks) implements Comparable<Key> {
+
+        // Parse a file name, "S01E02" becomes "s", 1, "e", 2 and "10" sorts after "9"
+        public static Key of(String name) {
+
+            // Variables
+            ArrayList<String> chunks = new ArrayList<>();
+            var lower = name.toLowerCase(Locale.ROOT);
+
+            // Split into Chunks
+            for (var position = 0; position < lower.length(); ) {
+                var start = position;
+                var digits = isDigit(lower.charAt(position));
+                while (position < lower.length() && isDigit(lower.charAt(position)) == digits) position++;
+
+                // Strip leading Zeros so numbers compare by length and then digit by digit
+                if (digits) while (start < position - 1 && lower.charAt(start) == '0') start++;
+                chunks.add(lower.substring(start, position));
+            }
+
+            return new Key(name, chunks.toArray(new String[0]));
+        }
+
+        // Compare chunk by chunk, numbers before text, then by the exact name
+        @Override
+        public int compareTo(Key other) {
+            for (var i = 0; i < Math.min(chunks.length, other.chunks.length); i++) {
+                String a = chunks[i], b = other.chunks[i];
+                boolean aNumber = isDigit(a.charAt(0)), bNumber = isDigit(b.charAt(0));
+
+                // Compare Chunks
+                int result;
+                if (aNumber && bNumber) result = a.length() != b.length() ? Integer.compare(a.length(), b.length()) : a.compareTo(b);
+                else if (aNumber != bNumber) result = aNumber ? -1 : 1;
+                else result = a.compareTo(b);
+                if (result != 0) return result;
+            }
+            if (chunks.length != other.chunks.length) return Integer.compare(chunks.length, other.chunks.length);
+            return name.compareTo(other.name);
+        }
+
+        // Check for an ASCII digit
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+    }
+
+    // Attributes
+    private final ArrayList<String> names;
+    private final ArrayList<String> videoNames;
+    private final HashMap<String, Integer> ids;
+    private final BitSet edls;
+    private final BitSet videos;
+
+    // Constructor
+    public EpisodeIndex() {
+        names = new ArrayList<>();
+        videoNames = new ArrayList<>();
+        ids = new HashMap<>();
+        edls = new BitSet();
+        videos = new BitSet();
+    }
+
+    // Listing: the EDL names and video file names of a directory, by episode name
+    public record Listing(HashSet<String> edls, HashMap<String, String> videos) {
+
+        // Constructor
+        public Listing() {
+            this(new HashSet<>(), new HashMap<>());
+        }
+
+        // Add a file, the first matching video extension wins
+        public void add(String name, String edl, List<String> extensions) {
+            if (name.endsWith(edl)) edls.add(name.substring(0, name.length() - edl.length()));
+            else for (var extension : extensions) if (name.endsWith(extension)) {
+                videos.merge(name.substring(0, name.length() - extension.length()), name, (kept, found) -> extensions.indexOf(kept.substring(kept.lastIndexOf('.'))) < extensions.indexOf(extension) ? kept : found);
+                break;
+            }
+        }
+
+        // Check if any EDL file has a matching video
+        public boolean hasPair() {
+            for (var name : edls) if (videos.containsKey(name)) return true;
+            return false;
+        }
+    }
+
+    // List a directory once and number its episodes in natural order
+    public static EpisodeIndex discover(Path directory, String edl, List<String> extensions) throws IOException {
+        Listing listing = new Listing();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                var name = file.getFileName().toString();
+                if (!name.startsWith(".") && Files.isRegularFile(file)) listing.add(name, edl, extensions);
+            }
+        }
+        return of(listing);
+    }
+
+    // Number the episodes of a listing in natural order
+    public static EpisodeIndex of(Listing listing) {
+
+        // Sort on precomputed Keys
+        HashSet<String> all = new HashSet<>(listing.edls);
+        all.addAll(listing.videos.keySet());
+        ArrayList<Key> keys = new ArrayList<>(all.size());
+        for (var name : all) keys.add(Key.of(name));
+        keys.sort(null);
+
+        // Number Episodes
+        EpisodeIndex index = new EpisodeIndex();
+        for (var key : keys) {
+            var id = index.add(key.name);
+            if (listing.edls.contains(key.name)) index.edls.set(id);
+            if (listing.videos.containsKey(key.name)) {
+                index.videos.set(id);
+                index.setVideo(id, listing.videos.get(key.name));
+            }
+        }
+        return index;
+    }
+
+    // Get the id of an episode, numbering it after all others if it is new
+    public synchronized int add(String name) {
+        var id = ids.get(name);
+        if (id != null) return id;
+        names.add(name);
+        videoNames.add(null);
+        ids.put(name, names.size() - 1);
+        return names.size() - 1;
+    }
+
+    // Get the file name of an episode without extension
+    public synchronized String getName(int id) {
+        return names.get(id);
+    }
+
+    // Get the file name of the video of an episode, null if it is unknown
+    public synchronized String getVideo(int id) {
+        return videoNames.get(id);
+    }
+
+    // Set the file name of the video of an episode
+    public synchronized void setVideo(int id, String video) {
+        videoNames.set(id, video);
+    }
+
+    // Get the discovered episodes with an EDL file in natural order
+    public synchronized int[] getEdls() {
+        return edls.stream().toArray();
+    }
+
+    // Get the discovered episodes with a video file in natural order
+    public synchronized int[] getVideos() {
+        return videos.stream().toArray();
+    }
+
+    // Get the number of episodes
+    public synchronized int size() {
+        return names.size();
+    }
+
+    // Remove all episodes
+    public synchronized void clear() {
+        names.clear();
+        videoNames.clear();
+        ids.clear();
+        edls.clear();
+        videos.clear();
+    }
+}
@@ -0,0 +1,157 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+public class EpisodeStore {
+
+    // Constants
+    public static final int INITIAL_CAPACITY = 64;
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    // Index: open addressing from episode to entry
+    private int[] slots;
+    private int[] slotEntries;
+
+    // Entries
+    private int[] episodes;
+    private int[] videoLengths;
+    private int[] firstChapters;
+    private int[] chapterCounts;
+    private int size;
+
+    // Chapters: begin and end packed into one long, intro and outro flags as bit pairs
+    private long[] bounds;
+    private final BitSet flags;
+    private int chapters;
+
+    // Constructor
+    public EpisodeStore() {
+        slots = new int[INITIAL_CAPACITY * 2];
+        slotEntries = new int[INITIAL_CAPACITY * 2];
+        Arrays.fill(slots, EMPTY);
+        episodes = new int[INITIAL_CAPACITY];
+        videoLengths = new int[INITIAL_CAPACITY];
+        firstChapters = new int[INITIAL_CAPACITY];
+        chapterCounts = new int[INITIAL_CAPACITY];
+        bounds = new long[INITIAL_CAPACITY * 2];
+        flags = new BitSet(INITIAL_CAPACITY * 4);
+    }
+
+    // Store the video length and EDL chapters of an episode
+    public synchronized void put(int episode, int videoLength, List<Converter.Chapter> edl) {
+
+        // Find or create Entry
+        var entry = find(episode);
+        if (entry < 0) {
+            if (size == episodes.length) growEntries();
+            if (2 * (size + 1) > slots.length) growSlots();
+            entry = size++;
+            insert(episode, entry);
+        }
+
+        // Store Chapters, replaced chapters stay unused
+        if (chapters + edl.size() > bounds.length) bounds = Arrays.copyOf(bounds, Math.max(bounds.length * 2, chapters + edl.size()));
+        for (var i = 0; i < edl.size(); i++) {
+            var chapter = edl.get(i);
+            bounds[chapters + i] = (long) chapter.begin() << 32 | chapter.end() & 0xFFFFFFFFL;
+            flags.set(2 * (chapters + i), chapter.isIntro());
+            flags.set(2 * (chapters + i) + 1, chapter.isOutro());
+        }
+
+        // Store Entry
+        episodes[entry] = episode;
+        videoLengths[entry] = videoLength;
+        firstChapters[entry] = chapters;
+        chapterCounts[entry] = edl.size();
+        chapters += edl.size();
+    }
+
+    // Remove all episodes but keep the allocated arrays
+    public synchronized void clear() {
+        Arrays.fill(slots, EMPTY);
+        flags.clear();
+        size = 0;
+        chapters = 0;
+    }
+
+    // Check if an episode is stored
+    public synchronized boolean contains(int episode) {
+        return find(episode) >= 0;
+    }
+
+    // Get the video length of an episode, -1 if it isn't stored
+    public synchronized int getVideoLength(int episode) {
+        var entry = find(episode);
+        return entry < 0 ? -1 : videoLengths[entry];
+    }
+
+    // Get the EDL chapters of an episode, null if it isn't stored
+    public synchronized ArrayList<Converter.Chapter> getChapters(int episode) {
+
+        // Find Entry
+        var entry = find(episode);
+        if (entry < 0) return null;
+
+        // Unpack Chapters
+        ArrayList<Converter.Chapter> edl = new ArrayList<>(chapterCounts[entry]);
+        for (var i = firstChapters[entry]; i < firstChapters[entry] + chapterCounts[entry]; i++) edl.add(new Converter.Chapter((int) (bounds[i] >> 32), (int) bounds[i], flags.get(2 * i), flags.get(2 * i + 1)));
+        return edl;
+    }
+
+    // Get all stored episodes in insertion order
+    public synchronized int[] getEpisodes() {
+        return Arrays.copyOf(episodes, size);
+    }
+
+    // Get the number of stored episodes
+    public synchronized int size() {
+        return size;
+    }
+
+    // Estimate the heap used by the arrays in bytes
+    public synchronized long getFootprint() {
+        return 4L * (slots.length + slotEntries.length + episodes.length + videoLengths.length + firstChapters.length + chapterCounts.length)
+                + 8L * bounds.length
+                + flags.size() / 8;
+    }
+
+    // Find the entry of an episode, -1 if there is none
+    private int find(int episode) {
+        var mask = slots.length - 1;
+        for (var slot = hash(episode) & mask; slots[slot] != EMPTY; slot = slot + 1 & mask) if (slots[slot] == episode) return slotEntries[slot];
+        return -1;
+    }
+
+    // Insert an episode into the index
+    private void insert(int episode, int entry) {
+        var mask = slots.length - 1;
+        var slot = hash(episode) & mask;
+        while (slots[slot] != EMPTY) slot = slot + 1 & mask;
+        slots[slot] = episode;
+        slotEntries[slot] = entry;
+    }
+
+    // Grow the entry arrays
+    private void growEntries() {
+        var capacity = episodes.length * 2;
+        episodes = Arrays.copyOf(episodes, capacity);
+        videoLengths = Arrays.copyOf(videoLengths, capacity);
+        firstChapters = Arrays.copyOf(firstChapters, capacity);
+        chapterCounts = Arrays.copyOf(chapterCounts, capacity);
+    }
+
+    // Grow and rebuild the index
+    private void growSlots() {
+        slots = new int[slots.length * 2];
+        slotEntries = new int[slots.length];
+        Arrays.fill(slots, EMPTY);
+        for (var entry = 0; entry < size; entry++) insert(episodes[entry], entry);
+    }
+
+    // Spread the bits of an episode number
+    private static int hash(int episode) {
+        var h = episode * 0x9E3779B9;
+        return h ^ h >>> 16;
+    }
+}
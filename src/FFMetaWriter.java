@@ -0,0 +1,140 @@
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+public class FFMetaWriter {
+
+    // Constants
+    public static final int INITIAL_CAPACITY = 1024;
+
+    // Precompiled Template
+    private static final byte[] HEADER = Converter.HEADER.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] START = "\n[CHAPTER]\nTIMEBASE=1/1000\nSTART=".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] END = "\nEND=".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TITLE = "\ntitle=".getBytes(StandardCharsets.UTF_8);
+
+    // Attributes
+    private byte[] buffer;
+    private int size;
+
+    // Constructor
+    public FFMetaWriter() {
+        buffer = new byte[INITIAL_CAPACITY];
+    }
+
+    // Render the ffmetadata document into the reusable buffer
+    public ByteBuffer render(List<Converter.Chapter> chapters) {
+
+        // Header
+        size = 0;
+        append(HEADER);
+
+        // Chapters
+        for (var chapter : chapters) {
+            append(START);
+            append(chapter.begin());
+            append(END);
+            append(chapter.end());
+            append(TITLE);
+            appendEscaped(chapter.title());
+            append((byte) '\n');
+        }
+
+        return ByteBuffer.wrap(buffer, 0, size);
+    }
+
+    // Render the ffmetadata document into a new array
+    public byte[] toByteArray(List<Converter.Chapter> chapters) {
+        render(chapters);
+        return Arrays.copyOf(buffer, size);
+    }
+
+    // Write the ffmetadata document with a single channel write
+    public void write(Path file, List<Converter.Chapter> chapters) throws IOException {
+        ByteBuffer rendered = render(chapters);
+        try (var channel = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            while (rendered.hasRemaining()) channel.write(rendered);
+        }
+    }
+
+    // Append a value as UTF-8, escaping the characters ffmetadata treats specially
+    private void appendEscaped(String value) {
+        for (var i = 0; i < value.length(); ) {
+
+            // Get Code Point
+            var codePoint = value.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            // Escape
+            if (codePoint == '=' || codePoint == ';' || codePoint == '#' || codePoint == '\\' || codePoint == '\n') append((byte) '\\');
+
+            // Encode
+            ensureCapacity(4);
+            if (codePoint < 0x80) buffer[size++] = (byte) codePoint;
+            else if (codePoint < 0x800) {
+                buffer[size++] = (byte) (0xC0 | codePoint >> 6);
+                buffer[size++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (codePoint < 0x10000) {
+                buffer[size++] = (byte) (0xE0 | codePoint >> 12);
+                buffer[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                buffer[size++] = (byte) (0x80 | codePoint & 0x3F);
+            } else {
+                buffer[size++] = (byte) (0xF0 | codePoint >> 18);
+                buffer[size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                buffer[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                buffer[size++] = (byte) (0x80 | codePoint & 0x3F);
+            }
+        }
+    }
+
+    // Append the decimal digits of an integer
+    private void append(int value) {
+
+        // Sign
+        ensureCapacity(11);
+        long remaining = value;
+        if (remaining < 0) {
+            buffer[size++] = '-';
+            remaining = -remaining;
+        }
+
+        // Count Digits
+        var digits = 1;
+        for (var limit = 10L; remaining >= limit; limit *= 10) digits++;
+
+        // Write Digits backwards
+        for (var i = size + digits - 1; i >= size; i--) {
+            buffer[i] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        size += digits;
+    }
+
+    // Append raw bytes
+    private void append(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    // Append a single byte
+    private void append(byte b) {
+        ensureCapacity(1);
+        buffer[size++] = b;
+    }
+
+    // Grow the buffer if needed
+    private void ensureCapacity(int additional) {
+        if (size + additional > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+    }
+}
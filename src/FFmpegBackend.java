@@ -0,0 +1,274 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import java.math.BigDecimal;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+
+public class FFmpegBackend implements ContainerBackend {
+
+    // Constants
+    private static final String PROBE_INPUT = "Input #";
+    private static final String PROBE_DURATION = "Duration: ";
+
+    @Override
+    public String getName() {
+        return "FFmpeg";
+    }
+
+    // Only selected as fallback
+    @Override
+    public List<String> getExtensions() {
+        return List.of();
+    }
+
+    // Only selected as fallback
+    @Override
+    public boolean matches(ByteBuffer magic) {
+        return false;
+    }
+
+    // Get the length of a video file in milliseconds using ffprobe
+    @Override
+    public int getDuration(Path file) throws IOException {
+        try {
+
+            // Command to run ffprobe and get the duration in seconds
+            String[] command = {
+                    "ffprobe",
+                    "-v", "error",
+                    "-show_entries", "format=duration",
+                    "-of", "default=noprint_wrappers=1:nokey=1",
+                    file.toString()
+            };
+
+            // Run ffprobe
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectErrorStream(true);
+            Process process = Processes.start(pb);
+
+            // Read the output of ffprobe
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String durationString = reader.readLine();
+            process.waitFor();
+
+            // Return the duration in milliseconds
+            if (durationString != null) return new BigDecimal(durationString.trim()).movePointRight(3).intValue();
+            else throw new IOException("Failed to get duration from ffprobe");
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while probing " + file.getFileName(), e);
+        } catch (IOException | NumberFormatException e) {
+            throw new IOException("Failed to get video duration: " + e.getMessage(), e);
+        }
+    }
+
+    // Get the lengths of several video files in milliseconds using one ffmpeg process, -1 for every file it couldn't read
+    public static int[] getDurations(String[] filePaths) throws InterruptedException {
+
+        // Command to let ffmpeg print the header of every input
+        int[] videoLengths = new int[filePaths.length];
+        Arrays.fill(videoLengths, -1);
+        ArrayList<String> command = new ArrayList<>(List.of("ffmpeg", "-hide_banner", "-nostdin"));
+        for (var filePath : filePaths) {
+            command.add("-i");
+            command.add(filePath);
+        }
+
+        try {
+
+            // Run ffmpeg, it exits with an error since there is no output
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectErrorStream(true);
+            Process process = Processes.start(pb);
+
+            // Read "Input #n" headers followed by their "Duration: HH:MM:SS.cc" line
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            var input = -1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(PROBE_INPUT)) {
+                    var comma = line.indexOf(',');
+                    input = comma < 0 ? -1 : Integer.parseInt(line.substring(PROBE_INPUT.length(), comma));
+                }
+                else if (input >= 0 && input < filePaths.length && videoLengths[input] < 0 && line.trim().startsWith(PROBE_DURATION)) {
+                    videoLengths[input] = parseDuration(line.trim().substring(PROBE_DURATION.length()));
+                }
+            }
+            process.waitFor();
+
+        } catch (IOException | NumberFormatException e) {
+            // Fall back to ffprobe for every file without a duration
+        }
+
+        return videoLengths;
+    }
+
+    // Read the chapters of a video file using ffprobe
+    @Override
+    public List<Mark> readChapters(Path file) throws IOException {
+        try {
+
+            // Command to run ffprobe and list the start and title of every chapter
+            String[] command = {
+                    "ffprobe",
+                    "-v", "error",
+                    "-show_entries", "chapter=start_time:chapter_tags=title",
+                    "-of", "csv=p=0",
+                    file.toString()
+            };
+
+            // Run ffprobe
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectErrorStream(true);
+            Process process = Processes.start(pb);
+
+            // Read "start,title" Lines
+            ArrayList<Mark> marks = new ArrayList<>();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                var comma = line.indexOf(',');
+                var begin = new BigDecimal(comma < 0 ? line.trim() : line.substring(0, comma).trim()).movePointRight(3).intValue();
+                marks.add(new Mark(begin, comma < 0 ? "" : line.substring(comma + 1)));
+            }
+            if (process.waitFor() != 0) throw new IOException("ffprobe exited with " + process.exitValue());
+            return marks;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading chapters of " + file.getFileName(), e);
+        } catch (NumberFormatException e) {
+            throw new IOException("Failed to read chapters: " + e.getMessage(), e);
+        }
+    }
+
+    // Remux a video with new chapters next to it and swap it in
+    @Override
+    public long writeChapters(Path file, List<Converter.Chapter> chapters) throws IOException {
+
+        // Variables
+        var name = file.getFileName().toString();
+        var path = file.toAbsolutePath().getParent() + File.separator;
+        var temp = file.resolveSibling("." + name);
+
+        try {
+
+            // Remux
+            if (!remux(path, name, new FFMetaWriter().toByteArray(chapters), -1, new Progress())) throw new IOException("ffmpeg failed for " + name);
+            try (var channel = FileChannel.open(temp, READ)) {
+                channel.force(true);
+            }
+
+            // Swap
+            Files.move(temp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+            return Files.size(file);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while remuxing " + name, e);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Every write remuxes the whole file
+    @Override
+    public boolean supportsInPlace() {
+        return false;
+    }
+
+    @Override
+    public boolean prefersInPlace() {
+        return false;
+    }
+
+    // Apply metadata to a video file, read from the .ffmeta file or piped to stdin if given, the duration in milliseconds is -1 if unknown, reported to the progress of its run
+    public static boolean remux(String path, String name, byte[] metadata, int duration, Progress progress) throws IOException, InterruptedException {
+
+        // Get the file name and extension
+        String fileName = name.substring(0, name.lastIndexOf('.'));
+        String extension = name.substring(name.lastIndexOf('.') + 1);
+
+        Log.debug("Applying metadata to: " + fileName + "." + extension);
+
+        // Command to run ffmpeg and apply metadata
+        String[] command = {
+                "ffmpeg",
+                "-y",
+                "-nostats",
+                "-progress", "pipe:1",
+                "-i", path + name,
+                "-f", "ffmetadata",
+                "-i", metadata == null ? path + fileName + Converter.FFMETA : "pipe:0",
+                "-map_metadata", "1",
+                "-map", "0",
+                "-map_chapters", "1",
+                "-c", "copy",
+                path + "." + fileName + "." + extension
+        };
+
+        // Run ffmpeg
+        ProcessBuilder pb = new ProcessBuilder(command);
+        Process process = Processes.start(pb);
+
+        // Read the log of ffmpeg on its own thread
+        StringBuilder output = new StringBuilder();
+        Thread logReader = Thread.ofVirtual().start(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) output.append(line).append('\n');
+            } catch (IOException e) {
+                output.append("Failed to read log: ").append(e.getMessage()).append('\n');
+            }
+        });
+
+        // Pipe Metadata
+        try (var stdin = process.getOutputStream()) {
+            if (metadata != null) stdin.write(metadata);
+        }
+
+        // Read the progress of ffmpeg
+        Progress.Transfer transfer = progress.start(name, duration);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line;
+        while ((line = reader.readLine()) != null) transfer.update(line);
+        logReader.join();
+
+        // Print the log in one piece, by default only if ffmpeg failed
+        var success = process.waitFor() == 0;
+        transfer.finish(success);
+        if (!success) Log.error("ffmpeg failed for " + name + ":\n" + output.toString().stripTrailing());
+        else Log.debug(output.toString().stripTrailing());
+        return success;
+    }
+
+    // Parse a "HH:MM:SS.cc" duration into milliseconds, -1 if it is unknown
+    private static int parseDuration(String duration) {
+        if (duration.length() < 11 || duration.charAt(2) != ':' || duration.charAt(5) != ':' || duration.charAt(8) != '.') return -1;
+        try {
+            var hours = Integer.parseInt(duration.substring(0, 2));
+            var minutes = Integer.parseInt(duration.substring(3, 5));
+            var seconds = Integer.parseInt(duration.substring(6, 8));
+            var centis = Integer.parseInt(duration.substring(9, 11));
+            return ((hours * 60 + minutes) * 60 + seconds) * 1000 + centis * 10;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
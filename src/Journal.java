@@ -0,0 +1,282 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+public class Journal implements Closeable {
+
+    // States
+    public enum State {
+        PROBED,
+        WRITTEN,
+        REWRITING, // Chapters are being written in place, the video has no temp file
+        REMUXED,
+        SWAPPED
+    }
+
+    // Records
+    private record Entry(State state, long videoSize, long videoModified, long edlModified) {}
+    private record Line(String video, Entry entry) {}
+
+    // Constants
+    public static final String FILE_NAME = ".converter.journal";
+    public static final String LOCK_NAME = ".converter.lock";
+    private static final String SEPARATOR = "\t";
+
+    // Attributes
+    private final Path directory;
+    private final Path file;
+    private final HashMap<String, Entry> entries;
+    private final boolean indexed;
+    private final FileLock lock;
+    private FileChannel channel;
+    private int lines;
+    private long runStart; // Size of a streaming journal before this run appended to it
+
+    // Constructor
+    public Journal(Path directory) throws IOException {
+        this(directory, true);
+    }
+
+    // Constructor
+    private Journal(Path directory, boolean indexed) throws IOException {
+
+        // Initialize Attributes
+        this.directory = directory;
+        this.indexed = indexed;
+        file = directory.resolve(FILE_NAME);
+        entries = new HashMap<>();
+
+        // Lock the Directory for the whole run, recovery would delete the temp files of another one
+        lock = lock(directory);
+        if (!indexed) {
+            runStart = Files.isRegularFile(file) ? Files.size(file) : 0;
+            return;
+        }
+
+        // Load Entries, unlocking again on failure
+        try {
+            if (Files.isRegularFile(file)) load();
+
+            // Compact if most lines are outdated
+            if (lines > 2 * entries.size()) compact();
+        } catch (IOException e) {
+            lock.channel().close();
+            throw e;
+        }
+    }
+
+    // Create a journal that only appends and keeps no index in memory, it never reports a video as done
+    public static Journal streaming(Path directory) throws IOException {
+        return new Journal(directory, false);
+    }
+
+    // Drop the lines a streaming run appended once it ended cleanly, they only matter for recovering a crash, so the journal doesn't grow with every run
+    public synchronized void truncateRun() throws IOException {
+        if (indexed || channel == null) return;
+        channel.truncate(runStart);
+        channel.force(false);
+        lines = 0;
+    }
+
+    // Check if a video was converted and neither it nor its EDL changed since
+    public synchronized boolean isDone(String video, Path edl) throws IOException {
+
+        // Get Entry
+        if (!indexed) return false;
+        Entry entry = entries.get(video);
+        if (entry == null || entry.state != State.SWAPPED) return false;
+
+        // Check Identity
+        var videoPath = directory.resolve(video);
+        if (!Files.isRegularFile(videoPath) || !Files.isRegularFile(edl)) return false;
+        var attributes = Files.readAttributes(videoPath, BasicFileAttributes.class);
+        return entry.videoSize == attributes.size()
+                && entry.videoModified == attributes.lastModifiedTime().toMillis()
+                && entry.edlModified == Files.getLastModifiedTime(edl).toMillis();
+    }
+
+    // Record a state transition and flush it to disk
+    public synchronized void record(State state, String video, Path edl) throws IOException {
+
+        // Create Entry
+        Entry entry;
+        if (state == State.SWAPPED) {
+            var attributes = Files.readAttributes(directory.resolve(video), BasicFileAttributes.class);
+            var edlModified = Files.isRegularFile(edl) ? Files.getLastModifiedTime(edl).toMillis() : 0;
+            entry = new Entry(state, attributes.size(), attributes.lastModifiedTime().toMillis(), edlModified);
+        } else entry = new Entry(state, 0, 0, 0);
+        if (indexed) entries.put(video, entry);
+
+        // Append Line
+        if (channel == null) channel = FileChannel.open(file, CREATE, WRITE, APPEND);
+        ByteBuffer line = ByteBuffer.wrap(format(video, entry).getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) channel.write(line);
+        channel.force(false);
+        lines++;
+    }
+
+    // Finish or clean up conversions interrupted by a crash, including temp files no journal knows
+    public synchronized void recover() throws IOException {
+
+        // Find Temp Files
+        HashMap<String, Path> temps = findTemps();
+
+        // Get the latest States of temp files and rewrites, read from the file without an index
+        HashMap<String, Entry> states = indexed ? entries : new HashMap<>();
+        if (!indexed && Files.isRegularFile(file)) try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                var line = parse(text);
+                if (line == null) continue;
+                if (temps.containsKey(line.video) || line.entry.state == State.REWRITING) states.put(line.video, line.entry);
+                else states.remove(line.video);
+            }
+        }
+
+        // Check Videos whose in-place Rewrite was interrupted, they are converted again
+        HashSet<String> rewrites = new HashSet<>();
+        for (var state : states.entrySet()) if (state.getValue().state == State.REWRITING) rewrites.add(state.getKey());
+        for (var name : rewrites) checkRewrite(name);
+
+        for (var name : temps.keySet()) {
+
+            // Get Files
+            var entry = states.get(name);
+            Path temp = temps.get(name);
+
+            // Finish the Swap of a complete Remux
+            if (entry != null && entry.state == State.REMUXED) {
+                Files.move(temp, directory.resolve(name), REPLACE_EXISTING, ATOMIC_MOVE);
+                record(State.SWAPPED, name, directory.resolve(name.substring(0, name.lastIndexOf('.')) + Converter.EDL));
+                Log.info("Recovered interrupted conversion: " + name);
+            }
+
+            // Delete an incomplete Remux
+            else {
+                Files.delete(temp);
+                Log.info("Deleted incomplete conversion: " + temp.getFileName());
+            }
+        }
+    }
+
+    // Close the journal and unlock the directory
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (channel != null) channel.close();
+            channel = null;
+        } finally {
+            if (lock.isValid()) lock.channel().close();
+        }
+    }
+
+    // Lock a directory, failing fast if another run holds it
+    private static FileLock lock(Path directory) throws IOException {
+        var lockChannel = FileChannel.open(directory.resolve(LOCK_NAME), CREATE, WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock != null) return lock;
+        lockChannel.close();
+        throw new IOException("Another conversion is running in " + directory);
+    }
+
+    // Log whether a video whose in-place rewrite was interrupted still has readable chapters
+    private void checkRewrite(String name) {
+        var video = directory.resolve(name);
+        if (!Files.isRegularFile(video)) return;
+        try {
+            ContainerBackend.select(video).readChapters(video);
+            Log.info("Interrupted chapter rewrite left a valid file: " + name);
+        } catch (IOException e) {
+            Log.error("Interrupted chapter rewrite damaged: " + name + " (" + e.getMessage() + ")");
+        }
+    }
+
+    // Find the hidden temp files of remuxes, ".name" next to the video "name"
+    private HashMap<String, Path> findTemps() throws IOException {
+        HashMap<String, Path> temps = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, ".*")) {
+            for (Path temp : files) {
+                var name = temp.getFileName().toString().substring(1);
+                if (Converter.getVideoExtension(name) != null && Files.isRegularFile(temp) && Files.isRegularFile(directory.resolve(name))) temps.put(name, temp);
+            }
+        }
+        return temps;
+    }
+
+    // Read all lines, later lines override earlier ones
+    private void load() throws IOException {
+
+        // Read File
+        var content = Files.readString(file, StandardCharsets.UTF_8);
+        for (var text : content.lines().toList()) {
+            var line = parse(text);
+            if (line == null) continue;
+            entries.put(line.video, line.entry);
+            lines++;
+        }
+
+        // Force a rewrite before appending after a truncated line
+        if (!content.isEmpty() && !content.endsWith("\n")) lines = Integer.MAX_VALUE;
+    }
+
+    // Rewrite the journal with only the latest state of every video
+    private void compact() throws IOException {
+
+        // Render Lines
+        StringBuilder content = new StringBuilder();
+        for (var entry : entries.entrySet()) content.append(format(entry.getKey(), entry.getValue()));
+
+        // Write Temp File
+        Path temp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (var tempChannel = FileChannel.open(temp, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) tempChannel.write(buffer);
+            tempChannel.force(false);
+        }
+
+        // Replace Journal
+        Files.move(temp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+        lines = entries.size();
+    }
+
+    // Parse a journal line, null if it was truncated by a crash
+    private static Line parse(String line) {
+        String[] split = line.split(SEPARATOR);
+        if (split.length != 5) return null;
+        try {
+            return new Line(split[1], new Entry(State.valueOf(split[0]), Long.parseLong(split[2]), Long.parseLong(split[3]), Long.parseLong(split[4])));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Format a journal line
+    private static String format(String video, Entry entry) {
+        return entry.state + SEPARATOR + video + SEPARATOR + entry.videoSize + SEPARATOR + entry.videoModified + SEPARATOR + entry.edlModified + "\n";
+    }
+}
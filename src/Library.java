@@ -0,0 +1,162 @@
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.FileStore;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class Library {
+
+    // Attributes
+    private final Options options;
+    private final ConcurrentHashMap<Path, Long> directoryTimes;
+    private final ConcurrentHashMap<Path, String> failures;
+    private final ConcurrentHashMap<Path, EpisodeIndex.Listing> listings; // Released once a directory is converted
+
+    // Constructor
+    public Library(Options options) throws IOException, InterruptedException {
+
+        // Initialize Attributes
+        this.options = options;
+        directoryTimes = new ConcurrentHashMap<>();
+        failures = new ConcurrentHashMap<>();
+
+        // Discover Directories
+        var start = System.nanoTime();
+        listings = new ConcurrentHashMap<>(discover(Path.of(options.directory())));
+        List<Path> directories = new ArrayList<>(listings.keySet());
+        directories.sort(null);
+        var discoverTime = System.nanoTime() - start;
+
+        // Convert Directories
+        convert(directories);
+
+        // Debug
+        Log.info("\n\n\n");
+        for (var directory : directories) {
+            var time = directoryTimes.get(directory);
+            var failure = failures.get(directory);
+            Log.info(directory + ": " + (time == null ? "-" : time / 1_000_000 + "ms") + (failure == null ? "" : " (failed: " + failure + ")"));
+        }
+        Log.info("Directories: " + directories.size());
+        Log.info("Discover Time: " + discoverTime / 1_000_000 + "ms");
+        Log.info("Total Time: " + (System.nanoTime() - start) / 1_000_000 + "ms");
+    }
+
+    // Find all directories containing an EDL file with a matching video and list their episodes in one walk
+    public static TreeMap<Path, EpisodeIndex.Listing> discover(Path root) throws IOException {
+
+        // Variables
+        HashMap<Path, EpisodeIndex.Listing> listings = new HashMap<>();
+
+        // Walk Tree
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                return !directory.equals(root) && directory.getFileName().toString().startsWith(".") ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                var name = file.getFileName().toString();
+                if (name.startsWith(".") || !attributes.isRegularFile() && !Files.isRegularFile(file)) return FileVisitResult.CONTINUE;
+                listings.computeIfAbsent(file.getParent(), k -> new EpisodeIndex.Listing()).add(name, Converter.EDL, Converter.VIDEOS);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                Log.error("Failed to visit: " + file + " (" + e.getMessage() + ")");
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // Keep Directories with Pairs, sorted
+        TreeMap<Path, EpisodeIndex.Listing> directories = new TreeMap<>();
+        for (var entry : listings.entrySet()) if (entry.getValue().hasPair()) directories.put(entry.getKey(), entry.getValue());
+        return directories;
+    }
+
+    // Default number of parallel directories based on cores and disks
+    private static int defaultJobs(List<Path> directories, int perDisk) {
+
+        // Count Disks
+        HashSet<FileStore> disks = new HashSet<>();
+        for (var directory : directories) try {
+            disks.add(Files.getFileStore(directory));
+        } catch (IOException ignored) {}
+
+        // Limit by Disks and Cores
+        return DiskScheduler.defaultJobs(disks, perDisk);
+    }
+
+    // Convert directories in parallel, their remuxes share the limits per disk and in total across all directories
+    private void convert(List<Path> directories) throws IOException, InterruptedException {
+
+        // Variables
+        var jobs = options.jobs() == Options.AUTO ? defaultJobs(directories, options.jobsPerDisk()) : Math.max(1, options.jobs());
+        DiskScheduler.Limits limits = new DiskScheduler.Limits(jobs, options.jobsPerDisk());
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(jobs, directories.size())));
+        ArrayList<Future<?>> tasks = new ArrayList<>();
+
+        // Submit Directories
+        try {
+            for (var directory : interleave(directories)) tasks.add(pool.submit(() -> {
+
+                // Convert Directory
+                var start = System.nanoTime();
+                try {
+                    new Converter(options.withDirectory(directory + File.separator).withJobs(jobs), EpisodeIndex.of(listings.remove(directory)), limits);
+                } catch (IOException | RuntimeException e) {
+                    failures.put(directory, String.valueOf(e.getMessage()));
+                }
+
+                directoryTimes.put(directory, System.nanoTime() - start);
+                return null;
+            }));
+            for (var task : tasks) task.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to convert library: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Order directories round-robin across their disks, so the directories running at once don't all wait for the same disk
+    private static List<Path> interleave(List<Path> directories) {
+
+        // Group Directories by Disk, keeping their order
+        LinkedHashMap<FileStore, ArrayDeque<Path>> disks = new LinkedHashMap<>();
+        for (var directory : directories) {
+            FileStore disk;
+            try {
+                disk = Files.getFileStore(directory);
+            } catch (IOException e) {
+                disk = null;
+            }
+            disks.computeIfAbsent(disk, key -> new ArrayDeque<>()).add(directory);
+        }
+
+        // Take one Directory per Disk in turn
+        ArrayList<Path> order = new ArrayList<>(directories.size());
+        while (order.size() < directories.size()) for (var queue : disks.values()) if (!queue.isEmpty()) order.add(queue.poll());
+        return order;
+    }
+}
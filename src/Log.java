@@ -0,0 +1,123 @@
+import java.io.PrintStream;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class Log {
+
+    // Levels
+    public enum Level {
+        QUIET,
+        NORMAL,
+        VERBOSE
+    }
+
+    // Constants
+    public static final int CAPACITY = 8192;
+
+    // Attributes
+    private static final BlockingQueue<String> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private static final Object lock = new Object();
+    private static volatile Level level = Level.NORMAL;
+    private static volatile PrintStream output = System.out;
+    private static long enqueued;
+    private static long written;
+
+    // Writer Thread
+    static {
+        Thread.ofPlatform().daemon().name("log-writer").start(Log::drain);
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush));
+    }
+
+    // Set the level of messages to print
+    public static void setLevel(Level level) {
+        Log.level = level;
+    }
+
+    // Set the stream messages are printed to
+    public static void setOutput(PrintStream output) {
+        flush();
+        Log.output = output;
+    }
+
+    // Check if verbose messages are printed, to skip building them
+    public static boolean isVerbose() {
+        return level == Level.VERBOSE;
+    }
+
+    // Print a detail, only in verbose mode
+    public static void debug(String message) {
+        if (level == Level.VERBOSE) put(message);
+    }
+
+    // Print progress and per-file results
+    public static void info(String message) {
+        if (level != Level.QUIET) put(message);
+    }
+
+    // Print a failure
+    public static void error(String message) {
+        put(message);
+    }
+
+    // Wait until every queued message is printed
+    public static void flush() {
+        synchronized (lock) {
+            var target = enqueued;
+            while (written < target) try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Queue a message, waiting while the writer catches up, also when interrupted so no message is lost
+    private static void put(String message) {
+        synchronized (lock) {
+            enqueued++;
+        }
+        var interrupted = false;
+        while (true) try {
+            queue.put(message);
+            break;
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    // Print queued messages in batches with one write each
+    private static void drain() {
+        ArrayList<String> batch = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        while (true) {
+
+            // Take Batch
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+
+            // Render Batch
+            for (var message : batch) text.append(message).append('\n');
+
+            // Print Batch
+            var stream = output;
+            stream.print(text);
+            stream.flush();
+
+            // Notify Flush
+            synchronized (lock) {
+                written += batch.size();
+                lock.notifyAll();
+            }
+            batch.clear();
+            text.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+public class Metrics {
+
+    // Constants
+    public static final String PREFIX = "intro_skip_burner_";
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    public static final int DEFAULT_PORT = 9464;
+
+    // Metric: rendered in the OpenMetrics text format
+    private interface Metric {
+        void render(StringBuilder out);
+    }
+
+    // Counter: a monotonically increasing count
+    public static final class Counter implements Metric {
+
+        // Attributes
+        private final String name;
+        private final String help;
+        private final LongAdder value = new LongAdder();
+
+        // Constructor
+        private Counter(String name, String help) {
+            this.name = PREFIX + name;
+            this.help = help;
+        }
+
+        // Count one event
+        public void inc() {
+            value.increment();
+        }
+
+        @Override
+        public void render(StringBuilder out) {
+            header(out, name, "counter", help);
+            out.append(name).append("_total ").append(value.sum()).append('\n');
+        }
+    }
+
+    // Gauge: a value which goes up and down, e.g. a queue depth
+    public static final class Gauge implements Metric {
+
+        // Attributes
+        private final String name;
+        private final String help;
+        private final AtomicLong value = new AtomicLong();
+
+        // Constructor
+        private Gauge(String name, String help) {
+            this.name = PREFIX + name;
+            this.help = help;
+        }
+
+        // Add to the value, negative to subtract
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        // Set the value
+        public void set(long value) {
+            this.value.set(value);
+        }
+
+        @Override
+        public void render(StringBuilder out) {
+            header(out, name, "gauge", help);
+            out.append(name).append(' ').append(value.get()).append('\n');
+        }
+    }
+
+    // Histogram: observations counted in cumulative buckets
+    public static final class Histogram implements Metric {
+
+        // Attributes
+        private final String name;
+        private final String help;
+        private final double[] bounds;
+        private final LongAdder[] buckets;
+        private final DoubleAdder sum = new DoubleAdder();
+
+        // Constructor
+        private Histogram(String name, String help, double... bounds) {
+            this.name = PREFIX + name;
+            this.help = help;
+            this.bounds = bounds;
+            buckets = new LongAdder[bounds.length + 1];
+            for (var i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        // Count an observation in the first bucket it fits into
+        public void observe(double value) {
+            var bucket = 0;
+            while (bucket < bounds.length && value > bounds[bucket]) bucket++;
+            buckets[bucket].increment();
+            sum.add(value);
+        }
+
+        // Count a duration in seconds from a start time of System.nanoTime
+        public void observeSince(long start) {
+            observe((System.nanoTime() - start) / 1e9);
+        }
+
+        @Override
+        public void render(StringBuilder out) {
+            header(out, name, "histogram", help);
+            long count = 0;
+            for (var i = 0; i < buckets.length; i++) {
+                count += buckets[i].sum();
+                var bound = i < bounds.length ? format(bounds[i]) : "+Inf";
+                out.append(name).append("_bucket{le=\"").append(bound).append("\"} ").append(count).append('\n');
+            }
+            out.append(name).append("_sum ").append(format(sum.sum())).append('\n');
+            out.append(name).append("_count ").append(count).append('\n');
+        }
+    }
+
+    // Counters
+    public static final Counter PROBED = new Counter("probed", "Videos whose duration was read natively or with ffprobe.");
+    public static final Counter REMUXED = new Counter("remuxed", "Videos remuxed with new chapters by ffmpeg.");
+    public static final Counter IN_PLACE = new Counter("in_place", "Videos whose chapters were rewritten in place.");
+    public static final Counter SKIPPED = new Counter("skipped", "Episodes skipped as already converted, already chaptered or without a video.");
+    public static final Counter FAILED = new Counter("failed", "Episodes which failed to convert.");
+
+    // Histograms
+    public static final Histogram PROBE_SECONDS = new Histogram("probe_seconds", "Time to read the duration of a video, batched ffprobe runs split evenly across their videos.", 0.001, 0.01, 0.05, 0.1, 0.5, 1, 5);
+    public static final Histogram REMUX_SECONDS = new Histogram("remux_seconds", "Time of a single ffmpeg remux.", 1, 5, 10, 30, 60, 120, 300, 600);
+    public static final Histogram REWRITTEN_BYTES = new Histogram("rewritten_bytes", "Bytes written to a video by a remux or an in-place chapter rewrite.", 1e4, 1e6, 1e7, 1e8, 2.5e8, 5e8, 1e9, 2.5e9, 5e9, 1e10);
+
+    // Gauges
+    public static final Gauge QUEUED_PROBES = new Gauge("queued_probes", "Videos waiting for their duration to be read.");
+    public static final Gauge QUEUED_REMUXES = new Gauge("queued_remuxes", "Episodes waiting for a remux job.");
+    public static final Gauge WAITING_PROCESSES = new Gauge("waiting_processes", "ffprobe and ffmpeg processes waiting for a process permit.");
+    public static final Gauge PENDING_EDLS = new Gauge("pending_edls", "Changed EDL files waiting for the watch debounce.");
+
+    // Registry
+    private static final List<Metric> METRICS = List.of(PROBED, REMUXED, IN_PLACE, SKIPPED, FAILED, PROBE_SECONDS, REMUX_SECONDS, REWRITTEN_BYTES, QUEUED_PROBES, QUEUED_REMUXES, WAITING_PROCESSES, PENDING_EDLS);
+
+    // Render all metrics in the OpenMetrics text format
+    public static String render() {
+        StringBuilder out = new StringBuilder();
+        for (var metric : METRICS) metric.render(out);
+        return out.append("# EOF\n").toString();
+    }
+
+    // Write all metrics to a file, replacing it atomically
+    public static void write(Path file) throws IOException {
+        var temp = file.resolveSibling("." + file.getFileName() + ".tmp");
+        Files.writeString(temp, render(), StandardCharsets.UTF_8);
+        Files.move(temp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    // Serve all metrics on http://localhost:port/metrics until the process exits
+    public static HttpServer serve(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            try (exchange) {
+                byte[] body = render().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+        return server;
+    }
+
+    // Print the type and help lines of a metric
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    }
+
+    // Format a number without a trailing ".0" for whole numbers
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+}
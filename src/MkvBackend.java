@@ -0,0 +1,51 @@
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import java.util.List;
+
+public class MkvBackend implements ContainerBackend {
+
+    @Override
+    public String getName() {
+        return "MKV";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of(Converter.MKV);
+    }
+
+    // An EBML header at the start
+    @Override
+    public boolean matches(ByteBuffer magic) {
+        return magic.limit() >= 4 && magic.getInt(0) == MkvReader.EBML;
+    }
+
+    @Override
+    public int getDuration(Path file) throws IOException {
+        return MkvReader.getDuration(file);
+    }
+
+    @Override
+    public List<Mark> readChapters(Path file) throws IOException {
+        return MkvReader.readChapters(file);
+    }
+
+    @Override
+    public long writeChapters(Path file, List<Converter.Chapter> chapters) throws IOException {
+        return MkvChapterWriter.write(file, chapters);
+    }
+
+    @Override
+    public boolean supportsInPlace() {
+        return true;
+    }
+
+    // The Chapters element is a single element of the Segment, rewriting it is the default
+    @Override
+    public boolean prefersInPlace() {
+        return true;
+    }
+}
@@ -0,0 +1,338 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+public class MkvChapterWriter {
+
+    // Constants
+    public static final int PADDING = 4096;
+    public static final int MIN_VOID_SIZE = 2;
+    private static final int EDITION_UID = 0x45BC;
+    private static final int CRC_32 = 0xBF;
+
+    // Write chapters into free space of the Segment, the old Chapters stay valid until the new ones are complete, returning the bytes written
+    public static long write(Path file, List<Converter.Chapter> chapters) throws IOException {
+        try (var channel = FileChannel.open(file, READ, WRITE)) {
+
+            // Find Elements
+            MkvReader.Element segment = MkvReader.readSegment(channel);
+            List<MkvReader.Element> children = MkvReader.children(channel, segment);
+            if (!children.isEmpty() && children.getLast().size() == MkvReader.UNKNOWN_SIZE) throw new IOException("Element of unknown size in " + file.getFileName());
+            var chaptersIndex = indexOf(children, MkvReader.CHAPTERS);
+            var seekHeads = new ArrayList<MkvReader.Element>();
+            for (var child : children) if (child.id() == MkvReader.SEEK_HEAD) seekHeads.add(child);
+
+            // Build new Chapters
+            byte[] newChapters = chapters(chapters);
+
+            // Plan the SeekHead updates first, SeekHeads that are rebuilt reserve their space before the Chapters get any
+            var positionLength = unsigned(channel.size() + newChapters.length + PADDING).length;
+            SeekPlan plan = planSeekHeads(channel, children, seekHeads, positionLength);
+            if (plan == null) throw new IOException("No room to update SeekHead in " + file.getFileName());
+
+            // Find Void space for them, players without a SeekHead only find them before the first Cluster
+            var firstCluster = indexOf(children, MkvReader.CLUSTER);
+            ContainerBackend.Region region = findVoid(children, newChapters.length, seekHeads.isEmpty() && firstCluster >= 0 ? firstCluster : children.size(), plan.reserved());
+
+            // Otherwise append them, which needs a SeekHead pointing to them and a Segment that ends with the file
+            byte[] segmentSize = null;
+            var append = region == null;
+            if (append) {
+                if (seekHeads.isEmpty()) throw new IOException("No SeekHead in " + file.getFileName());
+                var end = channel.size();
+                if (segment.size() != MkvReader.UNKNOWN_SIZE && segment.end() != end) throw new IOException("Segment doesn't end with " + file.getFileName());
+                region = new ContainerBackend.Region(end, newChapters.length + PADDING);
+                if (segment.size() != MkvReader.UNKNOWN_SIZE) {
+                    var sizeLength = segment.headerSize() - 4;
+                    var size = segment.size() + region.size();
+                    if (size >= (1L << 7 * sizeLength) - 1) throw new IOException("Segment size field too small in " + file.getFileName());
+                    segmentSize = vint(size, sizeLength);
+                }
+            }
+
+            // Chapters after the first Cluster need a SeekHead entry
+            var after = firstCluster >= 0 && region.offset() > children.get(firstCluster).offset();
+            if (after && !plan.indexed()) throw new IOException("No room to update SeekHead in " + file.getFileName());
+            List<Patch> patches = seekPatches(channel, children, plan, region, region.offset() - segment.dataOffset(), positionLength);
+            if (patches == null) throw new IOException("No room to update SeekHead in " + file.getFileName());
+            for (var patch : patches) if (patch.offset() < region.end() && patch.offset() + patch.bytes().length > region.offset()) throw new IOException("SeekHead overlaps new Chapters in " + file.getFileName());
+
+            // The file is modified from here on
+            long written = 0;
+            try {
+
+                // Append Void space with padding for later edits, then grow the Segment over it
+                if (append) {
+                    written += Mp4Reader.writeFully(channel, ByteBuffer.allocate((int) region.size()), region.offset());
+                    written += Mp4Reader.writeFully(channel, ByteBuffer.wrap(voidHeader(region.size())), region.offset());
+                    channel.force(false);
+                    if (segmentSize != null) {
+                        written += Mp4Reader.writeFully(channel, ByteBuffer.wrap(segmentSize), segment.offset() + 4);
+                        channel.force(false);
+                    }
+                }
+
+                // Write new Chapters, point every SeekHead to them, then retire the old ones
+                written += writeInto(channel, region, newChapters);
+                for (var patch : patches) written += Mp4Reader.writeFully(channel, ByteBuffer.wrap(patch.bytes()), patch.offset());
+                channel.force(false);
+                if (chaptersIndex >= 0) {
+                    var old = children.get(chaptersIndex);
+                    written += Mp4Reader.writeFully(channel, ByteBuffer.wrap(voidHeader(old.totalSize())), old.offset());
+                    channel.force(false);
+                }
+
+            } catch (IOException e) {
+                throw new ContainerBackend.PartialWriteException(file, e);
+            }
+            return written;
+        }
+    }
+
+    // Patch: bytes to write at an offset of the file
+    private record Patch(long offset, byte[] bytes) {}
+
+    // Field: a SeekPosition overwritten in place
+    private record Field(long offset, int size) {}
+
+    // SeekPlan: how every SeekHead gets the new position, indexed if one of them will have a Chapters entry
+    private record SeekPlan(List<Field> fields, List<MkvReader.Element> rebuilds, List<ContainerBackend.Region> reserved, boolean indexed) {}
+
+    // Find the first run of Void elements before a child index that an element fits into, skipping reserved space, null if there is none
+    private static ContainerBackend.Region findVoid(List<MkvReader.Element> children, long length, int limit, List<ContainerBackend.Region> reserved) {
+        for (var i = 0; i < limit; i++) {
+            if (children.get(i).id() != MkvReader.VOID) continue;
+            var offset = children.get(i).offset();
+            var end = offset;
+            for (; i < limit && children.get(i).id() == MkvReader.VOID; i++) end = children.get(i).end();
+            for (var region : reserved) if (region.offset() < end && region.end() > offset) offset = Math.max(offset, region.end());
+            if (offset < end && fits(length, end - offset)) return new ContainerBackend.Region(offset, end - offset);
+        }
+        return null;
+    }
+
+    // Write an element into Void space so the space stays a valid Void element until the header is written last, returning the bytes written
+    private static long writeInto(FileChannel channel, ContainerBackend.Region region, byte[] element) throws IOException {
+
+        // Merge the Void Elements into one
+        long written = 0;
+        byte[] header = voidHeader(region.size());
+        written += Mp4Reader.writeFully(channel, ByteBuffer.wrap(header), region.offset());
+        channel.force(false);
+
+        // Payload and remaining Void Space, keeping clear of the Void header
+        var headerSize = Math.max(header.length, MkvReader.MAX_HEADER_SIZE);
+        written += Mp4Reader.writeFully(channel, ByteBuffer.wrap(element, headerSize, element.length - headerSize), region.offset() + headerSize);
+        if (element.length < region.size()) written += Mp4Reader.writeFully(channel, ByteBuffer.wrap(voidHeader(region.size() - element.length)), region.offset() + element.length);
+        channel.force(false);
+
+        // Header
+        written += Mp4Reader.writeFully(channel, ByteBuffer.wrap(element, 0, headerSize), region.offset());
+        channel.force(false);
+        return written;
+    }
+
+    // Plan how every SeekHead gets a Chapters position of the given length, null if one can't be updated
+    private static SeekPlan planSeekHeads(FileChannel channel, List<MkvReader.Element> children, List<MkvReader.Element> seekHeads, int positionLength) throws IOException {
+        ArrayList<Field> fields = new ArrayList<>();
+        ArrayList<MkvReader.Element> rebuilds = new ArrayList<>();
+        ArrayList<ContainerBackend.Region> reserved = new ArrayList<>();
+        var found = false;
+        for (var seekHead : seekHeads) {
+
+            // Find Chapters Entries
+            ByteBuffer payload = MkvReader.readPayload(channel, seekHead);
+            ArrayList<Field> entries = new ArrayList<>();
+            var patchable = true;
+            for (var child : MkvReader.children(payload)) {
+                if (child.id() == CRC_32) patchable = false;
+                if (child.id() != MkvReader.SEEK) continue;
+                ByteBuffer seek = MkvReader.slice(payload, child);
+                MkvReader.Element seekId = MkvReader.child(seek, MkvReader.SEEK_ID);
+                if (seekId == null || MkvReader.readUnsigned(seek, seekId) != MkvReader.CHAPTERS) continue;
+
+                // Overwrite the position if its field is large enough
+                MkvReader.Element seekPosition = MkvReader.child(seek, MkvReader.SEEK_POSITION);
+                if (seekPosition == null || seekPosition.size() > 8 || seekPosition.size() < positionLength) patchable = false;
+                else entries.add(new Field(seekHead.dataOffset() + child.dataOffset() + seekPosition.dataOffset(), (int) seekPosition.size()));
+            }
+            if (entries.isEmpty()) continue;
+            found = true;
+
+            // Patch the Positions, otherwise rebuild the SeekHead in its space
+            if (patchable) fields.addAll(entries);
+            else {
+                var room = reserve(channel, children, seekHead, payload, positionLength);
+                if (room == null) return null;
+                rebuilds.add(seekHead);
+                reserved.add(room);
+            }
+        }
+
+        // Add an Entry to the first SeekHead, only needed for Chapters after the first Cluster
+        if (!found && !seekHeads.isEmpty()) {
+            var room = reserve(channel, children, seekHeads.getFirst(), MkvReader.readPayload(channel, seekHeads.getFirst()), positionLength);
+            if (room != null) {
+                rebuilds.add(seekHeads.getFirst());
+                reserved.add(room);
+                found = true;
+            }
+        }
+        return new SeekPlan(fields, rebuilds, reserved, found);
+    }
+
+    // Reserve the space a rebuilt SeekHead needs, null if it doesn't fit into its space
+    private static ContainerBackend.Region reserve(FileChannel channel, List<MkvReader.Element> children, MkvReader.Element seekHead, ByteBuffer payload, int positionLength) throws IOException {
+        var length = seekHead(payload, 0, positionLength).length;
+        return fits(length, availableAt(children, children.indexOf(seekHead))) ? new ContainerBackend.Region(seekHead.offset(), length) : null;
+    }
+
+    // Create the patches of a plan for the Chapters written into a region, null if a SeekHead doesn't fit next to them
+    private static List<Patch> seekPatches(FileChannel channel, List<MkvReader.Element> children, SeekPlan plan, ContainerBackend.Region region, long position, int positionLength) throws IOException {
+        ArrayList<Patch> patches = new ArrayList<>();
+        for (var field : plan.fields()) patches.add(new Patch(field.offset(), fixed(position, field.size())));
+        for (var seekHead : plan.rebuilds()) {
+
+            // Rebuild the SeekHead, its space ends where the new Chapters begin
+            byte[] newSeekHead = seekHead(MkvReader.readPayload(channel, seekHead), position, positionLength);
+            var available = availableAt(children, children.indexOf(seekHead));
+            if (region.offset() >= seekHead.offset() && region.offset() < seekHead.offset() + available) available = region.offset() - seekHead.offset();
+            if (!fits(newSeekHead.length, available)) return null;
+            patches.add(new Patch(seekHead.offset(), newSeekHead));
+            if (newSeekHead.length < available) patches.add(new Patch(seekHead.offset() + newSeekHead.length, voidHeader(available - newSeekHead.length)));
+        }
+        return patches;
+    }
+
+    // Create a Chapters element with a single edition
+    private static byte[] chapters(List<Converter.Chapter> chapters) throws IOException {
+
+        // Edition
+        var edition = new ByteArrayOutputStream();
+        edition.write(element(EDITION_UID, unsigned(1)));
+
+        // Chapters
+        for (var i = 0; i < chapters.size(); i++) {
+            var chapter = chapters.get(i);
+            var atom = new ByteArrayOutputStream();
+            atom.write(element(MkvReader.CHAPTER_UID, unsigned(i + 1)));
+            atom.write(element(MkvReader.CHAPTER_TIME_START, unsigned(chapter.begin() * MkvReader.NANOS_PER_MILLI)));
+            atom.write(element(MkvReader.CHAPTER_TIME_END, unsigned(chapter.end() * MkvReader.NANOS_PER_MILLI)));
+            atom.write(element(MkvReader.CHAPTER_DISPLAY, element(MkvReader.CHAP_STRING, chapter.title().getBytes(StandardCharsets.UTF_8))));
+            edition.write(element(MkvReader.CHAPTER_ATOM, atom.toByteArray()));
+        }
+
+        return element(MkvReader.CHAPTERS, element(MkvReader.EDITION_ENTRY, edition.toByteArray()));
+    }
+
+    // Copy the SeekHead payload with the Chapters entry pointing to a new position, stored with a fixed length so the size is known in advance
+    private static byte[] seekHead(ByteBuffer payload, long position, int positionLength) throws IOException {
+
+        // Variables
+        var out = new ByteArrayOutputStream(payload.limit() + 16);
+        byte[] chaptersId = id(MkvReader.CHAPTERS);
+
+        // Copy Seek Entries, dropping CRC-32 and Void elements which would be stale
+        for (var child : MkvReader.children(payload)) {
+            if (child.id() != MkvReader.SEEK) continue;
+            ByteBuffer seek = MkvReader.slice(payload, child);
+            MkvReader.Element seekId = MkvReader.child(seek, MkvReader.SEEK_ID);
+            if (seekId != null && seekId.size() == chaptersId.length && MkvReader.readUnsigned(seek, seekId) == MkvReader.CHAPTERS) continue;
+            byte[] raw = new byte[(int) child.totalSize()];
+            payload.get((int) child.offset(), raw);
+            out.write(raw);
+        }
+
+        // Add Chapters Entry
+        var entry = new ByteArrayOutputStream();
+        entry.write(element(MkvReader.SEEK_ID, chaptersId));
+        entry.write(element(MkvReader.SEEK_POSITION, fixed(position, positionLength)));
+        out.write(element(MkvReader.SEEK, entry.toByteArray()));
+
+        return element(MkvReader.SEEK_HEAD, out.toByteArray());
+    }
+
+    // Get the size of an element and the Void elements directly after it
+    private static long availableAt(List<MkvReader.Element> children, int index) {
+        var available = children.get(index).totalSize();
+        for (var i = index + 1; i < children.size() && children.get(i).id() == MkvReader.VOID; i++) available += children.get(i).totalSize();
+        return available;
+    }
+
+    // Check if data fits into space, with the rest large enough for a Void element
+    private static boolean fits(long length, long available) {
+        return length == available || available - length >= MIN_VOID_SIZE;
+    }
+
+    // Find the first element with an ID, -1 if there is none
+    private static int indexOf(List<MkvReader.Element> children, int id) {
+        for (var i = 0; i < children.size(); i++) if (children.get(i).id() == id) return i;
+        return -1;
+    }
+
+    // Wrap a payload into an element
+    private static byte[] element(int id, byte[] payload) {
+        byte[] idBytes = id(id);
+        byte[] size = vint(payload.length, vintLength(payload.length));
+        return ByteBuffer.allocate(idBytes.length + size.length + payload.length)
+                .put(idBytes)
+                .put(size)
+                .put(payload)
+                .array();
+    }
+
+    // Header of a Void element spanning the given size
+    private static byte[] voidHeader(long size) {
+        return size - MIN_VOID_SIZE < 0x7F
+                ? new byte[]{(byte) MkvReader.VOID, (byte) (0x80 | size - MIN_VOID_SIZE)}
+                : ByteBuffer.allocate(9).put((byte) MkvReader.VOID).put(vint(size - 9, 8)).array();
+    }
+
+    // Encode an element ID with its length marker
+    private static byte[] id(int id) {
+        var length = 4 - Integer.numberOfLeadingZeros(id) / 8;
+        byte[] bytes = new byte[length];
+        for (var i = 0; i < length; i++) bytes[i] = (byte) (id >>> 8 * (length - 1 - i));
+        return bytes;
+    }
+
+    // Encode an unsigned integer with as few bytes as possible
+    private static byte[] unsigned(long value) {
+        var length = Math.max(1, 8 - Long.numberOfLeadingZeros(value) / 8);
+        byte[] bytes = new byte[length];
+        for (var i = 0; i < length; i++) bytes[i] = (byte) (value >>> 8 * (length - 1 - i));
+        return bytes;
+    }
+
+    // Encode an unsigned integer with a fixed number of bytes
+    private static byte[] fixed(long value, int length) {
+        byte[] bytes = new byte[length];
+        for (var i = 0; i < length; i++) bytes[i] = (byte) (value >>> 8 * (length - 1 - i));
+        return bytes;
+    }
+
+    // Encode a size as a variable size integer of a fixed length
+    private static byte[] vint(long value, int length) {
+        byte[] bytes = new byte[length];
+        value |= 1L << 7 * length;
+        for (var i = 0; i < length; i++) bytes[i] = (byte) (value >>> 8 * (length - 1 - i));
+        return bytes;
+    }
+
+    // Get the shortest length of a variable size integer for a size
+    private static int vintLength(long value) {
+        var length = 1;
+        while (length < 8 && value >= (1L << 7 * length) - 1) length++;
+        return length;
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+public class MkvReader {
+
+    // Element IDs
+    public static final int EBML = 0x1A45DFA3;
+    public static final int SEGMENT = 0x18538067;
+    public static final int SEEK_HEAD = 0x114D9B74;
+    public static final int SEEK = 0x4DBB;
+    public static final int SEEK_ID = 0x53AB;
+    public static final int SEEK_POSITION = 0x53AC;
+    public static final int INFO = 0x1549A966;
+    public static final int TIMESTAMP_SCALE = 0x2AD7B1;
+    public static final int DURATION = 0x4489;
+    public static final int CHAPTERS = 0x1043A770;
+    public static final int EDITION_ENTRY = 0x45B9;
+    public static final int CHAPTER_ATOM = 0xB6;
+    public static final int CHAPTER_UID = 0x73C4;
+    public static final int CHAPTER_TIME_START = 0x91;
+    public static final int CHAPTER_TIME_END = 0x92;
+    public static final int CHAPTER_DISPLAY = 0x80;
+    public static final int CHAP_STRING = 0x85;
+    public static final int CLUSTER = 0x1F43B675;
+    public static final int VOID = 0xEC;
+
+    // Constants
+    public static final long UNKNOWN_SIZE = -1;
+    public static final int MAX_HEADER_SIZE = 12;
+    public static final int MAX_ELEMENT_SIZE = 64 * 1024 * 1024;
+    public static final long DEFAULT_TIMESTAMP_SCALE = 1_000_000; // Nanoseconds per tick
+    public static final long NANOS_PER_MILLI = 1_000_000;
+
+    // Record
+    public record Element(int id, long offset, int headerSize, long size) {
+
+        // Offset of the first byte of the payload
+        public long dataOffset() {
+            return offset + headerSize;
+        }
+
+        // Offset of the first byte after the element
+        public long end() {
+            return dataOffset() + size;
+        }
+
+        // Size of the element including its header
+        public long totalSize() {
+            return headerSize + size;
+        }
+    }
+
+    // Read the chapters of the first edition of an MKV file, empty if there are none
+    public static List<ContainerBackend.Mark> readChapters(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, READ)) {
+
+            // Find Chapters
+            Element segment = readSegment(channel);
+            Element chapters = findChild(channel, segment, CHAPTERS);
+            if (chapters == null) return List.of();
+            ByteBuffer payload = readPayload(channel, chapters);
+            Element edition = child(payload, EDITION_ENTRY);
+            if (edition == null) return List.of();
+
+            // Chapters
+            ArrayList<ContainerBackend.Mark> marks = new ArrayList<>();
+            ByteBuffer atoms = slice(payload, edition);
+            for (var atom : children(atoms)) {
+                if (atom.id() != CHAPTER_ATOM) continue;
+
+                // Start and Title
+                ByteBuffer fields = slice(atoms, atom);
+                Element start = child(fields, CHAPTER_TIME_START);
+                Element display = child(fields, CHAPTER_DISPLAY);
+                Element title = display == null ? null : child(slice(fields, display), CHAP_STRING);
+                var begin = start == null ? 0 : readUnsigned(fields, start) / NANOS_PER_MILLI;
+                marks.add(new ContainerBackend.Mark((int) begin, title == null ? "" : readString(slice(fields, display), title)));
+            }
+
+            return marks;
+        }
+    }
+
+    // Get the duration of an MKV file in milliseconds, -1 if it can't be read natively
+    public static int getDuration(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, READ)) {
+
+            // Read Segment Info
+            Element segment = readSegment(channel);
+            Element info = findChild(channel, segment, INFO);
+            if (info == null) return -1;
+            ByteBuffer payload = readPayload(channel, info);
+
+            // Duration in Timestamp Scale Units
+            Element scale = child(payload, TIMESTAMP_SCALE);
+            Element duration = child(payload, DURATION);
+            if (duration == null) return -1;
+            var nanos = readFloat(payload, duration) * (scale == null ? DEFAULT_TIMESTAMP_SCALE : readUnsigned(payload, scale));
+            var millis = Math.round(nanos / NANOS_PER_MILLI);
+            return millis < 0 || millis > Integer.MAX_VALUE ? -1 : (int) millis;
+        }
+    }
+
+    // Find the Segment after the EBML header
+    public static Element readSegment(FileChannel channel) throws IOException {
+
+        // EBML Header
+        var size = channel.size();
+        Element element = readElement(channel, 0, size);
+        if (element == null || element.id() != EBML) throw new IOException("Not an EBML file");
+
+        // Skip to Segment
+        while ((element = readElement(channel, element.end(), size)) != null) {
+            if (element.id() == SEGMENT) return element;
+            if (element.size() == UNKNOWN_SIZE) break;
+        }
+        throw new IOException("No Segment element");
+    }
+
+    // Get the offset of the first byte after a Segment, the end of the file if its size is unknown
+    public static long segmentEnd(FileChannel channel, Element segment) throws IOException {
+        return segment.size() == UNKNOWN_SIZE ? channel.size() : Math.min(segment.end(), channel.size());
+    }
+
+    // List the top level elements of a Segment, stopping after an element of unknown size
+    public static List<Element> children(FileChannel channel, Element segment) throws IOException {
+        ArrayList<Element> children = new ArrayList<>();
+        var end = segmentEnd(channel, segment);
+        for (Element child = readElement(channel, segment.dataOffset(), end); child != null; child = readElement(channel, child.end(), end)) {
+            children.add(child);
+            if (child.size() == UNKNOWN_SIZE) break;
+        }
+        return children;
+    }
+
+    // Find the first top level element of a Segment with an ID, null if there is none
+    public static Element findChild(FileChannel channel, Element segment, int id) throws IOException {
+        var end = segmentEnd(channel, segment);
+        for (Element child = readElement(channel, segment.dataOffset(), end); child != null; child = readElement(channel, child.end(), end)) {
+            if (child.id() == id) return child;
+            if (child.size() == UNKNOWN_SIZE) break;
+        }
+        return null;
+    }
+
+    // Read an element header from a file, null at the limit
+    public static Element readElement(FileChannel channel, long position, long limit) throws IOException {
+        if (position >= limit) return null;
+        ByteBuffer header = ByteBuffer.allocate((int) Math.min(MAX_HEADER_SIZE, limit - position));
+        while (header.hasRemaining()) if (channel.read(header, position + header.position()) < 0) break;
+        header.flip();
+        return readElement(header, 0, position);
+    }
+
+    // Read an element header from a buffer, its offset is relative to the given base
+    public static Element readElement(ByteBuffer buffer, int position, long base) throws IOException {
+
+        // ID, length marker kept
+        var idLength = vintLength(buffer, position);
+        if (idLength > 4 || position + idLength > buffer.limit()) throw new IOException("Invalid element ID");
+        var id = 0;
+        for (var i = 0; i < idLength; i++) id = id << 8 | Byte.toUnsignedInt(buffer.get(position + i));
+
+        // Size, length marker removed
+        var sizeLength = vintLength(buffer, position + idLength);
+        if (sizeLength > 8 || position + idLength + sizeLength > buffer.limit()) throw new IOException("Invalid element size");
+        long size = Byte.toUnsignedInt(buffer.get(position + idLength)) & 0xFF >> sizeLength;
+        for (var i = 1; i < sizeLength; i++) size = size << 8 | Byte.toUnsignedInt(buffer.get(position + idLength + i));
+        if (size == (1L << 7 * sizeLength) - 1) size = UNKNOWN_SIZE;
+
+        return new Element(id, base + position, idLength + sizeLength, size);
+    }
+
+    // Read the payload of an element into memory
+    public static ByteBuffer readPayload(FileChannel channel, Element element) throws IOException {
+        if (element.size() == UNKNOWN_SIZE || element.size() > MAX_ELEMENT_SIZE) throw new IOException("Element too large: " + Integer.toHexString(element.id()));
+        ByteBuffer payload = ByteBuffer.allocate((int) element.size());
+        Mp4Reader.readFully(channel, payload, element.dataOffset());
+        return payload.flip();
+    }
+
+    // List the elements of a payload
+    public static List<Element> children(ByteBuffer payload) throws IOException {
+        ArrayList<Element> children = new ArrayList<>();
+        var position = 0;
+        while (position < payload.limit()) {
+            Element child = readElement(payload, position, 0);
+            if (child.size() == UNKNOWN_SIZE || child.end() > payload.limit()) throw new IOException("Invalid child element size");
+            children.add(child);
+            position = (int) child.end();
+        }
+        return children;
+    }
+
+    // Find the first element of a payload with an ID, null if there is none
+    public static Element child(ByteBuffer payload, int id) throws IOException {
+        for (var child : children(payload)) if (child.id() == id) return child;
+        return null;
+    }
+
+    // Get the payload of an element of a buffer
+    public static ByteBuffer slice(ByteBuffer payload, Element element) {
+        return payload.slice((int) element.dataOffset(), (int) element.size());
+    }
+
+    // Read an unsigned integer element of a buffer
+    public static long readUnsigned(ByteBuffer payload, Element element) {
+        long value = 0;
+        for (var i = 0; i < element.size(); i++) value = value << 8 | Byte.toUnsignedInt(payload.get((int) element.dataOffset() + i));
+        return value;
+    }
+
+    // Read a float element of a buffer
+    private static double readFloat(ByteBuffer payload, Element element) throws IOException {
+        if (element.size() == 4) return payload.getFloat((int) element.dataOffset());
+        if (element.size() == 8) return payload.getDouble((int) element.dataOffset());
+        throw new IOException("Invalid float size: " + element.size());
+    }
+
+    // Read a UTF-8 string element of a buffer
+    private static String readString(ByteBuffer payload, Element element) {
+        byte[] bytes = new byte[(int) element.size()];
+        payload.get((int) element.dataOffset(), bytes);
+        var length = bytes.length;
+        while (length > 0 && bytes[length - 1] == 0) length--;
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // Get the length of a variable size integer from its first byte
+    private static int vintLength(ByteBuffer buffer, int position) throws IOException {
+        if (position >= buffer.limit()) throw new IOException("Truncated element header");
+        var first = Byte.toUnsignedInt(buffer.get(position));
+        return first == 0 ? 9 : Integer.numberOfLeadingZeros(first) - 23;
+    }
+}
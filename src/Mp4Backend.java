@@ -0,0 +1,55 @@
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import java.util.List;
+
+public class Mp4Backend implements ContainerBackend {
+
+    // Constants
+    private static final byte[] FTYP = "ftyp".getBytes(StandardCharsets.ISO_8859_1);
+
+    @Override
+    public String getName() {
+        return "MP4";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of(Converter.VIDEO);
+    }
+
+    // An ftyp box at the start
+    @Override
+    public boolean matches(ByteBuffer magic) {
+        return magic.limit() >= 8 && magic.slice(4, 4).equals(ByteBuffer.wrap(FTYP));
+    }
+
+    @Override
+    public int getDuration(Path file) throws IOException {
+        return Mp4Reader.getDuration(file);
+    }
+
+    @Override
+    public List<Mark> readChapters(Path file) throws IOException {
+        return Mp4Reader.readChapters(file);
+    }
+
+    @Override
+    public long writeChapters(Path file, List<Converter.Chapter> chapters) throws IOException {
+        return Mp4ChapterWriter.write(file, chapters);
+    }
+
+    @Override
+    public boolean supportsInPlace() {
+        return true;
+    }
+
+    // Rewriting moov is only done with --in-place
+    @Override
+    public boolean prefersInPlace() {
+        return false;
+    }
+}
@@ -0,0 +1,253 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+public class Mp4ChapterWriter {
+
+    // Constants
+    public static final int PADDING = 4096;
+    public static final int MAX_CHAPTERS = 255;
+    public static final int MAX_TITLE_LENGTH = 255;
+    public static final long CHPL_TIMEBASE = 10_000; // 100ns units per millisecond
+
+    // Write Nero chapters (moov/udta/chpl) by rewriting only the moov box, the old moov stays valid until the new one is complete, returning the bytes written
+    public static long write(Path file, List<Converter.Chapter> chapters) throws IOException {
+
+        // Validate
+        if (chapters.size() > MAX_CHAPTERS) throw new IOException("Too many chapters for chpl: " + chapters.size());
+
+        try (var channel = FileChannel.open(file, READ, WRITE)) {
+
+            // Find Boxes
+            List<Mp4Reader.Box> boxes = boxes(channel);
+            Mp4Reader.Box moov = null;
+            for (var box : boxes) if (box.type().equals("moov")) {
+                moov = box;
+                break;
+            }
+            if (moov == null) throw new IOException("No moov box in " + file.getFileName());
+
+            // Build new moov, a chapter track would keep showing the old chapters, only a remux replaces it
+            ByteBuffer payload = Mp4Reader.readMoov(channel);
+            if (Mp4Reader.hasChapterTrack(payload)) throw new IOException("Chapter track in " + file.getFileName());
+            byte[] newMoov = box("moov", replaceChapters(payload, chpl(chapters)));
+
+            // Find free space for it, otherwise it is appended
+            ContainerBackend.Region region = findFree(boxes, newMoov.length);
+            var last = boxes.getLast();
+            var openEnded = region == null && headerSizeField(channel, last) == 0;
+            if (openEnded && (last.headerSize() != Mp4Reader.HEADER_SIZE || last.size() > 0xFFFFFFFFL)) throw new IOException("Can't terminate last box in " + file.getFileName());
+
+            // The file is modified from here on
+            long written = 0;
+            try {
+
+                // Append free space with padding for later edits
+                if (region == null) {
+                    if (openEnded) written += Mp4Reader.writeFully(channel, ByteBuffer.allocate(4).putInt(0, (int) last.size()), last.offset());
+                    var end = channel.size();
+                    var size = newMoov.length + PADDING;
+                    written += Mp4Reader.writeFully(channel, ByteBuffer.allocate(size), end); // A box up to the end of the file until its header is written
+                    written += Mp4Reader.writeFully(channel, ByteBuffer.wrap(freeHeader(size)), end);
+                    channel.force(false);
+                    region = new ContainerBackend.Region(end, size);
+                }
+
+                // Write new moov, then retire the old one
+                written += writeInto(channel, region, newMoov);
+                written += Mp4Reader.writeFully(channel, ByteBuffer.wrap("free".getBytes(StandardCharsets.ISO_8859_1)), moov.offset() + 4);
+                channel.force(false);
+
+                // Drop free space the old moov left at the end of the file
+                truncateFree(channel, moov.offset());
+
+            } catch (IOException e) {
+                throw new ContainerBackend.PartialWriteException(file, e);
+            }
+            return written;
+        }
+    }
+
+    // List the top level boxes
+    private static List<Mp4Reader.Box> boxes(FileChannel channel) throws IOException {
+        ArrayList<Mp4Reader.Box> boxes = new ArrayList<>();
+        for (var box = Mp4Reader.readBox(channel, 0); box != null; box = Mp4Reader.readBox(channel, box.end())) boxes.add(box);
+        return boxes;
+    }
+
+    // Find the first run of free boxes a box fits into, null if there is none
+    private static ContainerBackend.Region findFree(List<Mp4Reader.Box> boxes, long length) {
+        for (var i = 0; i < boxes.size(); i++) {
+
+            // Collect Run
+            if (!isFree(boxes.get(i))) continue;
+            var offset = boxes.get(i).offset();
+            var end = boxes.get(i).end();
+            var plain = true;
+            for (; i < boxes.size() && isFree(boxes.get(i)); i++) {
+                plain &= boxes.get(i).headerSize() == Mp4Reader.HEADER_SIZE;
+                end = boxes.get(i).end();
+            }
+
+            // Check Size, the rest must hold a free header
+            var size = end - offset;
+            if (plain && size <= 0xFFFFFFFFL && (size == length || size - length >= Mp4Reader.HEADER_SIZE)) return new ContainerBackend.Region(offset, size);
+        }
+        return null;
+    }
+
+    // Write a box into free space so the space stays a valid free box until the header is written last, returning the bytes written
+    private static long writeInto(FileChannel channel, ContainerBackend.Region region, byte[] box) throws IOException {
+
+        // Merge the free Boxes into one
+        long written = 0;
+        written += Mp4Reader.writeFully(channel, ByteBuffer.wrap(freeHeader(region.size())), region.offset());
+        channel.force(false);
+
+        // Payload and remaining free Space
+        written += Mp4Reader.writeFully(channel, ByteBuffer.wrap(box, Mp4Reader.HEADER_SIZE, box.length - Mp4Reader.HEADER_SIZE), region.offset() + Mp4Reader.HEADER_SIZE);
+        if (box.length < region.size()) written += Mp4Reader.writeFully(channel, ByteBuffer.wrap(freeHeader(region.size() - box.length)), region.offset() + box.length);
+        channel.force(false);
+
+        // Header
+        written += Mp4Reader.writeFully(channel, ByteBuffer.wrap(box, 0, Mp4Reader.HEADER_SIZE), region.offset());
+        channel.force(false);
+        return written;
+    }
+
+    // Truncate the free boxes at the end of the file if they include the given offset
+    private static void truncateFree(FileChannel channel, long offset) throws IOException {
+        List<Mp4Reader.Box> boxes = boxes(channel);
+        var start = channel.size();
+        for (var i = boxes.size() - 1; i > 0 && isFree(boxes.get(i)); i--) start = boxes.get(i).offset();
+        if (start > offset) return;
+        channel.truncate(start);
+        channel.force(false);
+    }
+
+    // Copy the moov payload with udta/chpl replaced
+    private static byte[] replaceChapters(ByteBuffer moov, byte[] chpl) throws IOException {
+
+        // Variables
+        var out = new ByteArrayOutputStream(moov.limit() + chpl.length + Mp4Reader.HEADER_SIZE);
+        var replaced = false;
+
+        // Copy Children
+        for (var child : rawChildren(moov)) {
+            if (!typeOf(child).equals("udta")) out.write(child);
+            else if (!replaced) {
+
+                // Copy udta without chpl
+                var udta = new ByteArrayOutputStream();
+                var headerSize = ByteBuffer.wrap(child).getInt(0) == 1 ? 16 : Mp4Reader.HEADER_SIZE;
+                for (var entry : rawChildren(ByteBuffer.wrap(child, headerSize, child.length - headerSize).slice())) if (!typeOf(entry).equals("chpl")) udta.write(entry);
+                udta.write(chpl);
+                out.write(box("udta", udta.toByteArray()));
+                replaced = true;
+            }
+        }
+
+        // Add udta
+        if (!replaced) out.write(box("udta", chpl));
+        return out.toByteArray();
+    }
+
+    // Create a Nero chapter box
+    private static byte[] chpl(List<Converter.Chapter> chapters) throws IOException {
+
+        // Variables
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+
+        // Header
+        out.writeInt(0x01000000); // Version 1, no flags
+        out.writeInt(0); // Reserved
+        out.writeByte(chapters.size());
+
+        // Chapters
+        for (var chapter : chapters) {
+            byte[] title = chapter.title().getBytes(StandardCharsets.UTF_8);
+            var length = Math.min(title.length, MAX_TITLE_LENGTH);
+            out.writeLong(chapter.begin() * CHPL_TIMEBASE);
+            out.writeByte(length);
+            out.write(title, 0, length);
+        }
+
+        return box("chpl", bytes.toByteArray());
+    }
+
+    // Split a box payload into raw child boxes including their headers
+    private static List<byte[]> rawChildren(ByteBuffer parent) throws IOException {
+
+        // Variables
+        ArrayList<byte[]> children = new ArrayList<>();
+        var position = 0;
+
+        // Iterate over Boxes
+        while (position < parent.limit()) {
+
+            // Parse Header
+            if (position + Mp4Reader.HEADER_SIZE > parent.limit()) throw new IOException("Truncated box header");
+            long size = Integer.toUnsignedLong(parent.getInt(position));
+            if (size == 1) size = parent.getLong(position + Mp4Reader.HEADER_SIZE);
+            else if (size == 0) size = parent.limit() - position;
+            if (size < Mp4Reader.HEADER_SIZE || position + size > parent.limit()) throw new IOException("Invalid box size");
+
+            // Copy Box
+            byte[] child = new byte[(int) size];
+            parent.get(position, child);
+            if (parent.getInt(position) == 0) ByteBuffer.wrap(child).putInt(0, (int) size);
+            children.add(child);
+            position += (int) size;
+        }
+
+        return children;
+    }
+
+    // Wrap a payload into a box
+    private static byte[] box(String type, byte[] payload) throws IOException {
+        var size = (long) payload.length + Mp4Reader.HEADER_SIZE;
+        if (size > Integer.MAX_VALUE) throw new IOException(type + " box too large");
+        return ByteBuffer.allocate((int) size)
+                .putInt((int) size)
+                .put(type.getBytes(StandardCharsets.ISO_8859_1))
+                .put(payload)
+                .array();
+    }
+
+    // Header of a free box spanning the given size
+    private static byte[] freeHeader(long size) {
+        return ByteBuffer.allocate(Mp4Reader.HEADER_SIZE)
+                .putInt((int) size)
+                .put("free".getBytes(StandardCharsets.ISO_8859_1))
+                .array();
+    }
+
+    // Check if a box is padding
+    private static boolean isFree(Mp4Reader.Box box) {
+        return box.type().equals("free") || box.type().equals("skip");
+    }
+
+    // Get the type of a raw box
+    private static String typeOf(byte[] box) {
+        return new String(box, 4, 4, StandardCharsets.ISO_8859_1);
+    }
+
+    // Read the 32-bit size field of a box as stored in the file
+    private static long headerSizeField(FileChannel channel, Mp4Reader.Box box) throws IOException {
+        ByteBuffer field = ByteBuffer.allocate(4);
+        Mp4Reader.readFully(channel, field, box.offset());
+        return Integer.toUnsignedLong(field.getInt(0));
+    }
+}
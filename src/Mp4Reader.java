@@ -0,0 +1,332 @@
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+public class Mp4Reader {
+
+    // Constants
+    public static final int HEADER_SIZE = 8;
+    public static final int MAX_MOOV_SIZE = 64 * 1024 * 1024;
+    public static final int MAX_CHAPTER_SAMPLES = 65536;
+    public static final int MAX_CHAPTER_SAMPLE_SIZE = 64 * 1024;
+
+    // Record
+    public record Box(String type, long offset, long size, int headerSize) {
+
+        // Offset of the first byte after the box
+        public long end() {
+            return offset + size;
+        }
+    }
+
+    // Read the chapters players show, from the QuickTime chapter track if there is one, otherwise from Nero chapters (moov/udta/chpl), empty if there are none
+    public static List<ContainerBackend.Mark> readChapters(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, READ)) {
+
+            // Chapter Track, players read it after chpl under the same index so it wins
+            ByteBuffer moov = readMoov(channel);
+            ByteBuffer track = moov == null ? null : chapterTrack(moov);
+            if (track != null) return readTrackChapters(channel, track, file);
+
+            // Find Chapter Box
+            ByteBuffer udta = moov == null ? null : child(moov, "udta");
+            ByteBuffer chpl = udta == null ? null : child(udta, "chpl");
+            if (chpl == null) return List.of();
+
+            // Header
+            var version = chpl.get(0);
+            var position = version == 1 ? 8 : 4;
+            var count = Byte.toUnsignedInt(chpl.get(position++));
+
+            // Chapters
+            ArrayList<ContainerBackend.Mark> marks = new ArrayList<>(count);
+            for (var i = 0; i < count; i++) {
+                var begin = chpl.getLong(position) / Mp4ChapterWriter.CHPL_TIMEBASE;
+                var length = Byte.toUnsignedInt(chpl.get(position + 8));
+                byte[] title = new byte[length];
+                chpl.get(position + 9, title);
+                marks.add(new ContainerBackend.Mark((int) begin, new String(title, StandardCharsets.UTF_8)));
+                position += 9 + length;
+            }
+
+            return marks;
+
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated chapter box in " + file.getFileName());
+        }
+    }
+
+    // Read the text samples of a chapter track, each a 16-bit length and the title, starting at its decode time
+    private static List<ContainerBackend.Mark> readTrackChapters(FileChannel channel, ByteBuffer trak, Path file) throws IOException {
+
+        // Sample Tables
+        ByteBuffer mdia = child(trak, "mdia");
+        ByteBuffer mdhd = mdia == null ? null : child(mdia, "mdhd");
+        ByteBuffer minf = mdia == null ? null : child(mdia, "minf");
+        ByteBuffer stbl = minf == null ? null : child(minf, "stbl");
+        ByteBuffer stts = stbl == null ? null : child(stbl, "stts");
+        ByteBuffer stsz = stbl == null ? null : child(stbl, "stsz");
+        ByteBuffer stsc = stbl == null ? null : child(stbl, "stsc");
+        ByteBuffer stco = stbl == null ? null : child(stbl, "stco");
+        ByteBuffer co64 = stbl == null ? null : child(stbl, "co64");
+        if (mdhd == null || stts == null || stsz == null || stsc == null || stco == null && co64 == null) throw new IOException("Incomplete chapter track in " + file.getFileName());
+        long timescale = Integer.toUnsignedLong(mdhd.getInt(mdhd.get(0) == 1 ? 20 : 12));
+        if (timescale == 0) throw new IOException("Chapter track without timescale in " + file.getFileName());
+
+        // Sample Sizes
+        var fixedSize = stsz.getInt(4);
+        var count = stsz.getInt(8);
+        if (count < 0 || count > MAX_CHAPTER_SAMPLES) throw new IOException("Too many chapter samples in " + file.getFileName());
+
+        // Walk Chunks, every stsc entry applies up to the first chunk of the next
+        ArrayList<ContainerBackend.Mark> marks = new ArrayList<>(count);
+        var chunks = co64 != null ? co64.getInt(4) : stco.getInt(4);
+        var entries = stsc.getInt(4);
+        if (entries <= 0 && count > 0) throw new IOException("Chapter track without chunks in " + file.getFileName());
+        var entry = 0;
+        var sample = 0;
+
+        // Decode Times, every stts entry gives a delta for a number of samples
+        var timeEntries = stts.getInt(4);
+        var timeEntry = 0;
+        long timeLeft = timeEntries > 0 ? Integer.toUnsignedLong(stts.getInt(8)) : 0;
+        long time = 0;
+
+        for (var chunk = 1; chunk <= chunks && sample < count; chunk++) {
+            while (entry + 1 < entries && stsc.getInt(8 + 12 * (entry + 1)) <= chunk) entry++;
+            var perChunk = stsc.getInt(8 + 12 * entry + 4);
+            long offset = co64 != null ? co64.getLong(8 + 8 * (chunk - 1)) : Integer.toUnsignedLong(stco.getInt(8 + 4 * (chunk - 1)));
+            for (var i = 0; i < perChunk && sample < count; i++, sample++) {
+
+                // Read Title
+                var size = fixedSize != 0 ? fixedSize : stsz.getInt(12 + 4 * sample);
+                if (size < 0 || size > MAX_CHAPTER_SAMPLE_SIZE) throw new IOException("Chapter sample too large in " + file.getFileName());
+                marks.add(new ContainerBackend.Mark((int) (time * 1000 / timescale), readTitle(channel, offset, size)));
+                offset += size;
+
+                // Advance Decode Time
+                while (timeLeft == 0 && timeEntry + 1 < timeEntries) timeLeft = Integer.toUnsignedLong(stts.getInt(8 + 8 * ++timeEntry));
+                if (timeLeft > 0) {
+                    time += Integer.toUnsignedLong(stts.getInt(12 + 8 * timeEntry));
+                    timeLeft--;
+                }
+            }
+        }
+
+        return marks;
+    }
+    // Get the duration of an MP4 file in milliseconds, -1 if it can't be read natively
+    public static int getDuration(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, READ)) {
+
+            // Read Movie Box
+            ByteBuffer moov = readMoov(channel);
+            if (moov == null) return -1;
+
+            // Movie Header
+            long timescale = 0;
+            long duration = -1;
+            ByteBuffer mvhd = child(moov, "mvhd");
+            if (mvhd != null) {
+                var version = mvhd.get(0);
+                timescale = Integer.toUnsignedLong(mvhd.getInt(version == 1 ? 20 : 12));
+                duration = version == 1 ? unknownIfMax(mvhd.getLong(24), -1L) : unknownIfMax(Integer.toUnsignedLong(mvhd.getInt(16)), 0xFFFFFFFFL);
+            }
+            if (timescale > 0 && duration > 0) return toMillis(duration, timescale);
+
+            // Fall back to the longest Track
+            long longest = -1;
+            for (ByteBuffer trak : children(moov, "trak")) {
+                long trackLength = getTrackLength(trak, timescale);
+                if (trackLength > longest) longest = trackLength;
+            }
+            return longest > 0 ? (int) longest : -1;
+
+        } catch (IndexOutOfBoundsException e) {
+            return -1; // Truncated header box
+        }
+    }
+
+    // Read the title of a text sample, a 16-bit length followed by UTF-8 or UTF-16 with a byte order mark
+    private static String readTitle(FileChannel channel, long offset, int size) throws IOException {
+        if (size < 2) return "";
+        ByteBuffer sample = ByteBuffer.allocate(size);
+        readFully(channel, sample, offset);
+        var length = Math.min(Short.toUnsignedInt(sample.getShort(0)), size - 2);
+        var utf16 = length >= 2 && sample.get(2) == (byte) 0xFE && sample.get(3) == (byte) 0xFF;
+        return new String(sample.array(), 2, length, utf16 ? StandardCharsets.UTF_16 : StandardCharsets.UTF_8);
+    }
+
+    // Get the payload of the first track a tref/chap box references, null if there is none
+    private static ByteBuffer chapterTrack(ByteBuffer moov) {
+
+        // Referenced Track IDs
+        ArrayList<Integer> ids = new ArrayList<>();
+        for (ByteBuffer trak : children(moov, "trak")) {
+            ByteBuffer tref = child(trak, "tref");
+            ByteBuffer chap = tref == null ? null : child(tref, "chap");
+            if (chap != null) for (var i = 0; i + 4 <= chap.limit(); i += 4) ids.add(chap.getInt(i));
+        }
+
+        // Find Track by the ID in its Track Header
+        for (var id : ids) for (ByteBuffer trak : children(moov, "trak")) {
+            ByteBuffer tkhd = child(trak, "tkhd");
+            if (tkhd != null && tkhd.getInt(tkhd.get(0) == 1 ? 20 : 12) == id) return trak;
+        }
+        return null;
+    }
+
+    // Check if a track references a QuickTime chapter track (trak/tref/chap), players read its chapters after chpl under the same index
+    public static boolean hasChapterTrack(ByteBuffer moov) {
+        for (ByteBuffer trak : children(moov, "trak")) {
+            ByteBuffer tref = child(trak, "tref");
+            if (tref != null && child(tref, "chap") != null) return true;
+        }
+        return false;
+    }
+
+    // Get the length of a track in milliseconds from mdhd, falling back to tkhd
+    private static long getTrackLength(ByteBuffer trak, long movieTimescale) {
+
+        // Media Header
+        ByteBuffer mdia = child(trak, "mdia");
+        ByteBuffer mdhd = mdia == null ? null : child(mdia, "mdhd");
+        if (mdhd != null) {
+            var version = mdhd.get(0);
+            long timescale = Integer.toUnsignedLong(mdhd.getInt(version == 1 ? 20 : 12));
+            long duration = version == 1 ? unknownIfMax(mdhd.getLong(24), -1L) : unknownIfMax(Integer.toUnsignedLong(mdhd.getInt(16)), 0xFFFFFFFFL);
+            if (timescale > 0 && duration > 0) return toMillis(duration, timescale);
+        }
+
+        // Track Header, in movie timescale
+        ByteBuffer tkhd = child(trak, "tkhd");
+        if (tkhd != null && movieTimescale > 0) {
+            var version = tkhd.get(0);
+            long duration = version == 1 ? unknownIfMax(tkhd.getLong(28), -1L) : unknownIfMax(Integer.toUnsignedLong(tkhd.getInt(20)), 0xFFFFFFFFL);
+            if (duration > 0) return toMillis(duration, movieTimescale);
+        }
+
+        return -1;
+    }
+
+    // Read the payload of the top level moov box, null if there is none
+    public static ByteBuffer readMoov(FileChannel channel) throws IOException {
+
+        // Find Box
+        Box moov = findBox(channel, "moov");
+        if (moov == null) return null;
+
+        // Read Payload
+        var payloadSize = moov.size - moov.headerSize;
+        if (payloadSize > MAX_MOOV_SIZE) throw new IOException("moov box too large: " + payloadSize + " bytes");
+        ByteBuffer buffer = ByteBuffer.allocate((int) payloadSize);
+        readFully(channel, buffer, moov.offset + moov.headerSize);
+        return buffer.flip();
+    }
+
+    // Find a top level box by walking the box headers, null if there is none
+    public static Box findBox(FileChannel channel, String type) throws IOException {
+        for (Box box = readBox(channel, 0); box != null; box = readBox(channel, box.end())) if (box.type.equals(type)) return box;
+        return null;
+    }
+
+    // Read the header of the box at the given position, null at the end of the file
+    public static Box readBox(FileChannel channel, long position) throws IOException {
+
+        // Read Header
+        var fileSize = channel.size();
+        if (position + HEADER_SIZE > fileSize) return null;
+        ByteBuffer header = ByteBuffer.allocate(16);
+        header.limit(HEADER_SIZE);
+        readFully(channel, header, position);
+
+        // Parse Header
+        long size = Integer.toUnsignedLong(header.getInt(0));
+        String type = new String(header.array(), 4, 4, StandardCharsets.ISO_8859_1);
+        var headerSize = HEADER_SIZE;
+        if (size == 1) {
+            header.limit(16);
+            readFully(channel, header, position + HEADER_SIZE);
+            size = header.getLong(HEADER_SIZE);
+            headerSize = 16;
+        } else if (size == 0) size = fileSize - position;
+
+        // Validate
+        if (size < headerSize || position + size > fileSize) throw new IOException("Invalid " + type + " box at " + position);
+        return new Box(type, position, size, headerSize);
+    }
+
+    // Get the payload of the first child box of the given type, null if there is none
+    public static ByteBuffer child(ByteBuffer parent, String type) {
+        var found = children(parent, type);
+        return found.length == 0 ? null : found[0];
+    }
+
+    // Get the payloads of all child boxes of the given type
+    public static ByteBuffer[] children(ByteBuffer parent, String type) {
+
+        // Variables
+        var found = new ArrayList<ByteBuffer>();
+        var position = 0;
+
+        // Iterate over Boxes
+        while (position + HEADER_SIZE <= parent.limit()) {
+
+            // Parse Header
+            long size = Integer.toUnsignedLong(parent.getInt(position));
+            var headerSize = HEADER_SIZE;
+            if (size == 1) {
+                if (position + 16 > parent.limit()) break;
+                size = parent.getLong(position + HEADER_SIZE);
+                headerSize = 16;
+            } else if (size == 0) size = parent.limit() - position;
+            if (size < headerSize || position + size > parent.limit()) break;
+
+            // Match Type
+            if (typeEquals(parent, position + 4, type)) found.add(parent.slice(position + headerSize, (int) size - headerSize));
+            position += (int) size;
+        }
+
+        return found.toArray(ByteBuffer[]::new);
+    }
+
+    // Read until the buffer is full
+    public static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            var read = channel.read(buffer, position);
+            if (read < 0) throw new IOException("Unexpected end of file");
+            position += read;
+        }
+    }
+
+    // Write until the buffer is empty and return the number of bytes written
+    public static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        var length = buffer.remaining();
+        while (buffer.hasRemaining()) position += channel.write(buffer, position);
+        return length;
+    }
+
+    // Compare a four character code
+    private static boolean typeEquals(ByteBuffer buffer, int position, String type) {
+        for (var i = 0; i < 4; i++) if (buffer.get(position + i) != type.charAt(i)) return false;
+        return true;
+    }
+
+    // Treat all-ones durations as unknown
+    private static long unknownIfMax(long value, long max) {
+        return value == max ? -1 : value;
+    }
+
+    // Convert a duration in timescale units to milliseconds, truncating like ffprobe's seconds
+    private static int toMillis(long duration, long timescale) {
+        return (int) (duration / timescale * 1000 + duration % timescale * 1000 / timescale);
+    }
+}
@@ -0,0 +1,85 @@
+import java.io.File;
+
+import java.net.URISyntaxException;
+
+public record Options(String directory, int jobs, int jobsPerDisk, int processes, boolean inPlace, boolean pipe, boolean pipeline, boolean recursive, boolean watch, boolean stream, Log.Level logLevel, int metricsPort, String metricsFile) {
+
+    // Constants
+    public static final int AUTO = 0;
+    public static final String USAGE = "Usage: java -jar intro-skip-burner.jar [--jobs N] [--jobs-per-disk N] [--processes N] [--in-place] [--pipe] [--pipeline] [--recursive] [--watch] [--stream] [--quiet | --verbose] [--metrics FILE] [--metrics-port N] [directory]";
+
+    // Default Options for a directory
+    public static Options of(String directory) {
+        return new Options(directory, AUTO, AUTO, AUTO, false, false, false, false, false, false, Log.Level.NORMAL, Metrics.DEFAULT_PORT, null);
+    }
+
+    // Copy with another directory
+    public Options withDirectory(String directory) {
+        return new Options(directory, jobs, jobsPerDisk, processes, inPlace, pipe, pipeline, recursive, watch, stream, logLevel, metricsPort, metricsFile);
+    }
+
+    // Copy with another number of jobs
+    public Options withJobs(int jobs) {
+        return new Options(directory, jobs, jobsPerDisk, processes, inPlace, pipe, pipeline, recursive, watch, stream, logLevel, metricsPort, metricsFile);
+    }
+
+    // Parse command line arguments, an unknown or incomplete option is rejected with the usage
+    public static Options parse(String[] args) throws URISyntaxException {
+
+        // Variables
+        String directory = null;
+        var jobs = AUTO;
+        var jobsPerDisk = AUTO;
+        var processes = AUTO;
+        var inPlace = false;
+        var pipe = false;
+        var pipeline = false;
+        var recursive = false;
+        var watch = false;
+        var stream = false;
+        var logLevel = Log.Level.NORMAL;
+        var metricsPort = Metrics.DEFAULT_PORT;
+        String metricsFile = null;
+
+        // Parse Arguments
+        for (var i = 0; i < args.length; i++) switch (args[i]) {
+            case "--jobs", "-j" -> jobs = number(args, ++i);
+            case "--jobs-per-disk" -> jobsPerDisk = number(args, ++i);
+            case "--processes" -> processes = number(args, ++i);
+            case "--in-place" -> inPlace = true;
+            case "--pipe" -> pipe = true;
+            case "--pipeline" -> pipeline = true;
+            case "--recursive", "-r" -> recursive = true;
+            case "--watch", "-w" -> watch = true;
+            case "--stream" -> stream = true;
+            case "--quiet", "-q" -> logLevel = Log.Level.QUIET;
+            case "--verbose", "-v" -> logLevel = Log.Level.VERBOSE;
+            case "--metrics-port" -> metricsPort = number(args, ++i);
+            case "--metrics" -> metricsFile = value(args, ++i);
+            default -> {
+                if (args[i].startsWith("-")) throw new IllegalArgumentException("Unknown option: " + args[i] + "\n" + USAGE);
+                directory = args[i];
+            }
+        }
+
+        // Get Directory
+        if (directory == null) directory = new File(Converter.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getParent() + "/";
+
+        return new Options(directory, jobs, jobsPerDisk, processes, inPlace, pipe, pipeline, recursive, watch, stream, logLevel, metricsPort, metricsFile);
+    }
+
+    // Get the value of the option before an index
+    private static String value(String[] args, int i) {
+        if (i >= args.length) throw new IllegalArgumentException("Missing value for " + args[i - 1] + "\n" + USAGE);
+        return args[i];
+    }
+
+    // Get the number of the option before an index
+    private static int number(String[] args, int i) {
+        try {
+            return Integer.parseInt(value(args, i));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number for " + args[i - 1] + ": " + args[i] + "\n" + USAGE);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import java.io.IOException;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+
+public class Processes {
+
+    // Constants
+    public static final int DEFAULT_LIMIT = 4 * Runtime.getRuntime().availableProcessors();
+
+    // Attributes
+    private static volatile Semaphore permits = new Semaphore(DEFAULT_LIMIT, true);
+    private static volatile int limit = DEFAULT_LIMIT;
+    private static final ThreadLocal<Set<Process>> OWNED = new ThreadLocal<>(); // Live processes of the current task
+
+    // Set the maximum number of live child processes, only affects processes started afterwards
+    public static void setLimit(int limit) {
+        Processes.limit = Math.max(1, limit);
+        permits = new Semaphore(Processes.limit, true);
+    }
+
+    // Get the maximum number of live child processes
+    public static int getLimit() {
+        return limit;
+    }
+
+    // Start a process once a permit is free, the permit is released when the process exits
+    public static Process start(ProcessBuilder builder) throws IOException, InterruptedException {
+
+        // Acquire Permit
+        Semaphore semaphore = permits;
+        Metrics.WAITING_PROCESSES.add(1);
+        try {
+            semaphore.acquire();
+        } finally {
+            Metrics.WAITING_PROCESSES.add(-1);
+        }
+
+        // Start Process
+        try {
+            Process process = builder.start();
+            process.onExit().thenRun(semaphore::release);
+
+            // Track until it exits
+            Set<Process> owned = OWNED.get();
+            if (owned != null) {
+                owned.add(process);
+                process.onExit().thenRun(() -> owned.remove(process));
+            }
+
+            // Don't leave a process behind a cancelled task
+            if (Thread.interrupted()) {
+                process.destroy();
+                throw new InterruptedException("Cancelled before reading " + builder.command().getFirst());
+            }
+            return process;
+        } catch (IOException | RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+    }
+
+    // Run a task on the current thread, adding the processes it starts to a set until they exit
+    public static <T> T track(Set<Process> processes, Callable<T> task) throws Exception {
+        OWNED.set(processes);
+        try {
+            return task.call();
+        } finally {
+            OWNED.remove();
+        }
+    }
+
+    // Destroy processes, their readers see the end of their output
+    public static void destroy(Set<Process> processes) {
+        for (var process : processes) process.destroy();
+    }
+}
@@ -0,0 +1,180 @@
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Progress {
+
+    // Constants
+    public static final long REPORT_INTERVAL = 5_000; // Milliseconds between progress lines
+    private static final double MEGABYTE = 1024 * 1024;
+
+    // Aggregate of one run
+    private final Set<Transfer> running = ConcurrentHashMap.newKeySet();
+    private final AtomicLong planned = new AtomicLong();
+    private final AtomicLong finishedMedia = new AtomicLong();
+    private final AtomicLong finishedBytes = new AtomicLong();
+    private final AtomicLong transfers = new AtomicLong();
+    private final AtomicLong lastReport = new AtomicLong();
+    private long busy; // Milliseconds with running transfers before busySince, guarded by running
+    private long busySince;
+
+    // Transfer: a single remux reported by ffmpeg's -progress output
+    public final class Transfer {
+
+        // Attributes
+        private final String name;
+        private final int duration;
+        private final long start;
+        private volatile long outTime;
+        private volatile long totalSize;
+        private volatile double speed;
+        private long lastReport;
+
+        // Constructor
+        private Transfer(String name, int duration) {
+            this.name = name;
+            this.duration = duration;
+            start = System.currentTimeMillis();
+            lastReport = start;
+        }
+
+        // Parse a "key=value" line of the -progress output
+        public void update(String line) {
+            var separator = line.indexOf('=');
+            if (separator < 0) return;
+            var value = line.substring(separator + 1).trim();
+            try {
+                switch (line.substring(0, separator)) {
+                    case "out_time_us" -> outTime = Long.parseLong(value) / 1000;
+                    case "total_size" -> totalSize = Long.parseLong(value);
+                    case "speed" -> speed = Double.parseDouble(value.replace("x", ""));
+                    case "progress" -> report();
+                    default -> {}
+                }
+            } catch (NumberFormatException ignored) {
+                // N/A until ffmpeg knows the value
+            }
+        }
+
+        // Finish the transfer and print its summary
+        public void finish(boolean success) {
+            synchronized (running) {
+                running.remove(this);
+                if (running.isEmpty()) busy += System.currentTimeMillis() - busySince;
+            }
+            finishedMedia.addAndGet(success && duration > 0 ? duration : outTime);
+            finishedBytes.addAndGet(totalSize);
+            Log.info("Remuxed " + name + ": " + (success ? "" : "failed after ") + megabytes(totalSize) + " in " + time(elapsed()) + " (" + rate(totalSize, elapsed()) + ", " + realtime(getRealtime()) + ")");
+        }
+
+        // Get the realtime factor, as reported by ffmpeg if possible
+        public double getRealtime() {
+            return speed > 0 ? speed : outTime / (double) Math.max(1, elapsed());
+        }
+
+        // Get the estimated remaining time in milliseconds, -1 if it is unknown
+        public long getEta() {
+            var realtime = getRealtime();
+            return duration > 0 && realtime > 0 ? (long) (Math.max(0, duration - outTime) / realtime) : -1;
+        }
+
+        // Print the progress of this transfer and all transfers once per interval
+        private void report() {
+            var now = System.currentTimeMillis();
+            if (now - lastReport < REPORT_INTERVAL) return;
+            lastReport = now;
+            if (Log.isVerbose()) Log.debug(toString());
+            Progress.this.report(now);
+        }
+
+        // Get the milliseconds since the start
+        private long elapsed() {
+            return System.currentTimeMillis() - start;
+        }
+
+        // Format the progress, e.g. "3.mkv: 45% 812.3MB 66.0MB/s 41.2x ETA 0:12"
+        @Override
+        public String toString() {
+            var percent = duration > 0 ? Math.min(100, outTime * 100 / duration) + "% " : "";
+            return name + ": " + percent + megabytes(totalSize) + " " + rate(totalSize, elapsed()) + " " + realtime(getRealtime()) + " ETA " + time(getEta());
+        }
+    }
+
+    // Start tracking a remux of a video with a duration in milliseconds, -1 if it is unknown
+    public Transfer start(String name, int duration) {
+        transfers.incrementAndGet();
+        Transfer transfer = new Transfer(name, duration);
+        synchronized (running) {
+            if (running.isEmpty()) busySince = transfer.start;
+            running.add(transfer);
+        }
+        return transfer;
+    }
+
+    // Announce media expected to be remuxed, for the aggregate ETA, unknown durations are ignored
+    public void plan(long millis) {
+        if (millis > 0) planned.addAndGet(millis);
+    }
+
+    // Withdraw announced media which didn't need a remux
+    public void skip(long millis) {
+        if (millis > 0) planned.addAndGet(-millis);
+    }
+
+    // Get the number of started transfers
+    public long getTransfers() {
+        return transfers.get();
+    }
+
+    // Format the aggregate of all transfers, e.g. "2 running, 2.1GB written, 180.4MB/s, 95.3x realtime, ETA 1:05"
+    public String summary() {
+
+        // Sum Transfers, idle time between them doesn't count
+        long elapsed;
+        synchronized (running) {
+            elapsed = Math.max(1, busy + (running.isEmpty() ? 0 : System.currentTimeMillis() - busySince));
+        }
+        long bytes = finishedBytes.get();
+        long media = finishedMedia.get();
+        var active = 0;
+        for (var transfer : running) {
+            bytes += transfer.totalSize;
+            media += transfer.outTime;
+            active++;
+        }
+
+        // Rates
+        var realtime = media / (double) elapsed;
+        var remaining = planned.get() - media;
+        var eta = remaining > 0 && realtime > 0 ? (long) (remaining / realtime) : -1;
+        return active + " running, " + megabytes(bytes) + " written, " + rate(bytes, elapsed) + ", " + realtime(realtime) + " realtime, ETA " + time(eta);
+    }
+
+    // Print the aggregate at most once per interval across all transfers
+    private void report(long now) {
+        var last = lastReport.get();
+        if (now - last >= REPORT_INTERVAL && lastReport.compareAndSet(last, now)) Log.info("Remuxing: " + summary());
+    }
+
+    // Format bytes in megabytes or gigabytes
+    private static String megabytes(long bytes) {
+        return bytes >= 1024 * MEGABYTE ? String.format("%.1fGB", bytes / MEGABYTE / 1024) : String.format("%.1fMB", bytes / MEGABYTE);
+    }
+
+    // Format a throughput in megabytes per second
+    private static String rate(long bytes, long millis) {
+        return String.format("%.1fMB/s", bytes / MEGABYTE / Math.max(1, millis) * 1000);
+    }
+
+    // Format a realtime factor
+    private static String realtime(double factor) {
+        return String.format("%.1fx", factor);
+    }
+
+    // Format milliseconds as minutes and seconds, "-" if unknown
+    private static String time(long millis) {
+        if (millis < 0) return "-";
+        var seconds = millis / 1000;
+        return seconds / 60 + ":" + String.format("%02d", seconds % 60);
+    }
+}
@@ -0,0 +1,229 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+public class Watcher {
+
+    // Constants
+    public static final long DEBOUNCE = 5_000; // Milliseconds without changes before an EDL is converted
+
+    // Attributes
+    private final Options options;
+    private final WatchService watchService;
+    private final HashMap<WatchKey, Path> directories;
+    private final HashMap<Path, Long> pending;
+    private final Map<Path, Boolean> running;
+    private final Map<Path, Converter> converters; // One per directory, sharing its cache and journal across events
+    private final ExecutorService pool;
+
+    // Constructor
+    public Watcher(Options options) throws IOException, InterruptedException {
+
+        // Initialize Attributes
+        this.options = options;
+        watchService = FileSystems.getDefault().newWatchService();
+        directories = new HashMap<>();
+        pending = new HashMap<>();
+        running = new ConcurrentHashMap<>();
+        converters = new ConcurrentHashMap<>();
+        pool = Executors.newFixedThreadPool(options.jobs() == Options.AUTO ? DiskScheduler.defaultJobs(Set.of(Files.getFileStore(Path.of(options.directory()))), options.jobsPerDisk()) : Math.max(1, options.jobs()));
+
+        // Register Directories
+        register(Path.of(options.directory()));
+        Log.info("Watching " + directories.size() + " directories for new EDL files");
+
+        // Recover interrupted Conversions of previous runs
+        for (var directory : directories.values()) if (Files.isRegularFile(directory.resolve(Journal.FILE_NAME))) try {
+            converter(directory);
+        } catch (IOException e) {
+            Log.error("Failed to recover: " + directory + " (" + e.getMessage() + ")");
+        }
+
+        // Serve Metrics, watching goes on without them
+        HttpServer metrics = null;
+        if (options.metricsPort() >= 0) try {
+            metrics = Metrics.serve(options.metricsPort());
+            Log.info("Serving metrics on http://localhost:" + metrics.getAddress().getPort() + "/metrics");
+        } catch (IOException e) {
+            Log.error("Failed to serve metrics on port " + options.metricsPort() + " (" + e.getMessage() + ")");
+        }
+
+        // Watch
+        try (watchService) {
+            watch();
+        } catch (ClosedWatchServiceException ignored) {
+            // Stopped
+        } finally {
+            pool.shutdown();
+            if (metrics != null) metrics.stop(0);
+
+            // Close Converters once their last episode is done
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } finally {
+                for (var converter : converters.values()) converter.close();
+            }
+        }
+    }
+
+    // Handle events until interrupted
+    private void watch() throws IOException, InterruptedException {
+        while (!Thread.currentThread().isInterrupted()) {
+
+            // Wait for the next Event or Deadline
+            var now = System.currentTimeMillis();
+            var timeout = pending.values().stream().mapToLong(deadline -> deadline - now).min().orElse(Long.MAX_VALUE);
+            WatchKey key = timeout == Long.MAX_VALUE ? watchService.take() : watchService.poll(Math.max(0, timeout), TimeUnit.MILLISECONDS);
+
+            // Handle Events
+            if (key != null) {
+                handle(key);
+                if (!key.reset()) directories.remove(key);
+            }
+
+            // Convert settled Episodes
+            convertDue();
+            Metrics.PENDING_EDLS.set(pending.size());
+        }
+    }
+
+    // Collect the events of a directory
+    private void handle(WatchKey key) throws IOException {
+
+        // Get Directory
+        Path directory = directories.get(key);
+        if (directory == null) return;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+
+            // Lost Events
+            if (event.kind() == OVERFLOW) {
+                Log.error("Missed events in: " + directory);
+                continue;
+            }
+
+            // Get File
+            Path file = directory.resolve((Path) event.context());
+            var name = file.getFileName().toString();
+
+            // New Directory
+            if (event.kind() == ENTRY_CREATE && options.recursive() && Files.isDirectory(file) && !name.startsWith(".")) register(file);
+
+            // Debounce EDL
+            else if (name.endsWith(Converter.EDL) && !name.startsWith(".")) pending.put(file, System.currentTimeMillis() + DEBOUNCE);
+        }
+    }
+
+    // Convert all episodes whose EDL hasn't changed for the debounce time
+    private void convertDue() {
+        var now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<Path, Long>> iterator = pending.entrySet().iterator(); iterator.hasNext(); ) {
+
+            // Check Deadline
+            var entry = iterator.next();
+            if (entry.getValue() > now) continue;
+
+            // Retry later if still converting
+            var edl = entry.getKey();
+            if (running.putIfAbsent(edl, true) != null) {
+                entry.setValue(now + DEBOUNCE);
+                continue;
+            }
+
+            // Convert
+            iterator.remove();
+            pool.submit(() -> {
+                try {
+                    convert(edl);
+                } finally {
+                    running.remove(edl);
+                }
+            });
+        }
+    }
+
+    // Convert the episode of an EDL file
+    private void convert(Path edl) {
+
+        // Variables
+        var name = edl.getFileName().toString();
+        var directory = edl.getParent();
+        var video = directory.resolve(Converter.findVideo(directory, name.substring(0, name.length() - Converter.EDL.length())));
+
+        try {
+
+            // Check Files
+            if (!Files.isRegularFile(edl) || !Files.isRegularFile(video)) {
+                Metrics.SKIPPED.inc();
+                Log.info("Skipping: " + edl + " (no matching video)");
+                return;
+            }
+
+            // Convert Episode
+            var start = System.nanoTime();
+            var episode = name.substring(0, name.length() - Converter.EDL.length());
+            converter(directory).convertEpisode(episode);
+            Log.info("Converted " + edl + " in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+
+        } catch (IOException | RuntimeException e) {
+            Metrics.FAILED.inc();
+            Log.error("Failed to convert: " + edl + " (" + e.getMessage() + ")");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Get the converter of a directory, opening it and recovering its interrupted conversions on first use
+    private Converter converter(Path directory) throws IOException, InterruptedException {
+        synchronized (converters) {
+            var converter = converters.get(directory);
+            if (converter == null) {
+                converter = Converter.open(options.withDirectory(directory + File.separator));
+                converters.put(directory, converter);
+            }
+            return converter;
+        }
+    }
+
+    // Register a directory and, in recursive mode, all directories below it
+    private void register(Path root) throws IOException {
+        if (!options.recursive()) {
+            directories.put(root.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), root);
+            return;
+        }
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                if (!directory.equals(root) && directory.getFileName().toString().startsWith(".")) return FileVisitResult.SKIP_SUBTREE;
+                directories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}